@@ -78,6 +78,32 @@ public class Config {
      */
     public static char[] keyStorePassword;
 
+    /**
+     * If a connection authenticated with certificates may be resumed
+     * with a session ticket when reconnecting, skipping the RSA operations.
+     */
+    public static Boolean resumeSessions = true;
+
+    /**
+     * The milliseconds a session ticket may be used to resume a session for after it is issued.
+     */
+    public static Long sessionTicketLifetime = 600_000L;
+
+    /**
+     * The number of threads for the RSA operations of authenticating connections, bounding how many run at once.
+     */
+    public static Integer handshakeThreads = 2;
+
+    /**
+     * The milliseconds a one use authentication code may be used for after it is issued.
+     */
+    public static Long oneUseCodeLifetime = 600_000L;
+
+    /**
+     * The maximum number of one use authentication codes held at once.
+     */
+    public static Integer maximumOneUseCodes = 4096;
+
     // NETWORKING
 
     /**
@@ -100,6 +126,15 @@ public class Config {
      */
     public static Integer internalPort;
 
+    /**
+     * The Unix domain socket file a {@link com.nija123098.sithreon.backend.machines.GameServer} also accepts
+     * {@link com.nija123098.sithreon.backend.machines.GameClient}s on, or empty to only use {@link Config#internalPort}.
+     * <p>
+     * A relative path is resolved against the working directory, and it's directory is bind mounted at the same
+     * absolute path into each runner container, which then needs no network access.
+     */
+    public static String gameServerSocketFile = "";
+
     /**
      * The priority this client has to serve a server.
      */
@@ -110,6 +145,99 @@ public class Config {
      */
     public static String standardAccessibleDomains;
 
+    /**
+     * If connections should be served by a fixed set of selector threads instead of a thread per connection.
+     */
+    public static Boolean nonBlockingTransport = false;
+
+    /**
+     * The number of selector threads serving connections when {@link Config#nonBlockingTransport} is enabled.
+     */
+    public static Integer eventLoopThreads = 2;
+
+    /**
+     * If machines connect within this program instance instead of over sockets, by port number,
+     * so a whole network of machines with a shared config may run in one program for testing and benchmarking.
+     */
+    public static Boolean loopbackTransport = false;
+
+    /**
+     * The maximum number of batches of frames waiting to be received by each side of a {@link Config#loopbackTransport} connection.
+     */
+    public static Integer loopbackQueueCapacity = 256;
+
+    /**
+     * The maximum number of bytes of a {@link com.nija123098.sithreon.backend.networking.Lane#BULK} frame written
+     * at once, bounding how long a {@link com.nija123098.sithreon.backend.networking.Lane#INTERACTIVE} frame waits.
+     */
+    public static Integer transferChunkSize = 16 * 1024;
+
+    /**
+     * The maximum number of bytes of a received frame, after which the connection is dropped rather than buffering it.
+     */
+    public static Integer maximumFrameSize = 64 * 1024 * 1024;
+
+    /**
+     * The maximum number of bytes of a competitor file sent as one piece.
+     */
+    public static Integer fileTransferPieceSize = 256 * 1024;
+
+    /**
+     * The number of competitor file pieces a game client allows to be sent before acknowledging them.
+     */
+    public static Integer fileTransferWindow = 16;
+
+    /**
+     * If frames over {@link Config#compressionThreshold} are compressed, used when both sides of a connection enable it.
+     */
+    public static Boolean compressFrames = true;
+
+    /**
+     * The minimum number of bytes of a frame to compress, smaller frames are not worth the time.
+     */
+    public static Integer compressionThreshold = 512;
+
+    /**
+     * The maximum number of accepted connections which have not yet authenticated, further connections are refused.
+     */
+    public static Integer maximumUnauthenticatedConnections = 64;
+
+    /**
+     * The milliseconds between heartbeats on each authenticated connection, 0 disables heartbeats.
+     */
+    public static Long heartbeatInterval = 2_000L;
+
+    /**
+     * The number of heartbeat intervals a connection may receive nothing for before it is closed as dead.
+     */
+    public static Integer heartbeatMissLimit = 3;
+
+    /**
+     * The milliseconds to wait before the first attempt to reconnect to a higher server, doubled for each further attempt.
+     */
+    public static Long reconnectInitialDelay = 500L;
+
+    /**
+     * The maximum milliseconds to wait between attempts to reconnect to a higher server.
+     */
+    public static Long reconnectMaximumDelay = 30_000L;
+
+    /**
+     * The milliseconds to attempt to reconnect to a higher server before closing, 0 to never stop.
+     */
+    public static Long reconnectTimeout = 0L;
+
+    /**
+     * If daemon threads, such as those reading connections and container output, should be virtual threads.
+     * This requires Java 21 or later, platform threads being used otherwise.
+     */
+    public static Boolean virtualThreads = false;
+
+    /**
+     * If the arguments of every written {@link MachineAction} should be checked against it's method, for debugging.
+     */
+    public static Boolean validateMachineActions = false;
+
     // FILE DIRECTORIES
 
     /**
@@ -122,6 +250,11 @@ public class Config {
      */
     public static String repositoryDirectory = "repos" + File.separator;
 
+    /**
+     * Directory for competitor file contents by hash, shared by the machines of a host.
+     */
+    public static String blobDirectory = "blobs" + File.separator;
+
     /**
      * Directory for text database.
      */
@@ -154,6 +287,17 @@ public class Config {
      */
     public static Long checkInterval = 30_000L;
 
+    /**
+     * The milliseconds to wait for a {@link com.nija123098.sithreon.backend.machines.CheckClient} to report on a repository before checking it elsewhere.
+     */
+    public static Long checkRequestTimeout = 600_000L;
+
+    /**
+     * The milliseconds to wait for a {@link com.nija123098.sithreon.backend.machines.GameServer} to complete a match before warning of it,
+     * the match is only run elsewhere if the connection to the server is lost.
+     */
+    public static Long matchRequestTimeout = 3_600_000L;
+
     // GAME
 
     public static Class<? extends GameRules> gameRules = DefaultGameRules.class;
@@ -11,8 +11,11 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The representation of a machine on the SITHREON network.
@@ -21,10 +24,9 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public abstract class Machine {
     /**
-     * The latest machine to have been registered.
-     * Accessing this should be a last resort.
+     * The number of milliseconds to wait for {@link MachineAction#CLOSE_ALL} to be sent before closing.
      */
-    public static final AtomicReference<Machine> MACHINE = new AtomicReference<>();
+    private static final long CLOSE_ALL_TIMEOUT = 5_000;
 
     /**
      * The sockets that connect this machine to the rest of the network.
@@ -46,9 +48,6 @@ public abstract class Machine {
      */
     protected Machine() {
         KeepAliveUtil.start(this);
-        if (MACHINE.get() != null) {
-            Log.WARN.log("Launching a second Machine instance in the same program instance, this may cause unexpected issues.");
-        } else MACHINE.set(this);
     }
 
     /**
@@ -117,7 +116,12 @@ public abstract class Machine {
      */
     @Action(MachineAction.CLOSE_ALL)
     public void closeAll() {
-        this.sockets.forEach(socket -> socket.write(MachineAction.CLOSE_ALL));
+        CompletableFuture<?>[] writes = this.sockets.stream().map(socket -> socket.write(MachineAction.CLOSE_ALL)).toArray(CompletableFuture[]::new);
+        try {// writes are asynchronous, so wait for them to be sent before closing the sockets
+            CompletableFuture.allOf(writes).get(CLOSE_ALL_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Log.WARN.log("Unable to confirm all machines were commanded to close", e);
+        }
         this.close();
     }
 
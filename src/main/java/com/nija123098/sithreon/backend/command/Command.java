@@ -109,7 +109,7 @@ public abstract class Command {
     }
 
     static {
-        registerDefault(Machine.class, Machine.MACHINE::get);
+        registerDefault(Machine.class, CommandHandler::getMachine);
         registerDefault(Boolean.class, () -> false);
         registerDefault(Certificate.class, () -> Certificate.getCertificate(Config.selfCertificateSerial));
         registerDefault(PrivateKey.class, () -> Config.privateKey);
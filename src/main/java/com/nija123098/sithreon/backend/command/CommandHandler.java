@@ -1,5 +1,6 @@
 package com.nija123098.sithreon.backend.command;
 
+import com.nija123098.sithreon.backend.Machine;
 import com.nija123098.sithreon.backend.util.Log;
 import com.nija123098.sithreon.backend.util.StringUtil;
 import com.nija123098.sithreon.backend.util.ThreadMaker;
@@ -12,6 +13,7 @@ import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 /**
@@ -33,6 +35,11 @@ public class CommandHandler {
      */
     static final Scanner SCANNER = new Scanner(new BufferedInputStream(System.in));
 
+    /**
+     * The machine last started by a command, which commands act on by default.
+     */
+    private static final AtomicReference<Machine> MACHINE = new AtomicReference<>();
+
     /**
      * Initializes the command handler.
      *
@@ -86,6 +93,24 @@ public class CommandHandler {
         COMMAND_MAP.invokeCommand(args, fatal);
     }
 
+    /**
+     * Sets the machine started by a command for later commands to act on.
+     *
+     * @param machine the machine started by a command.
+     */
+    public static void setMachine(Machine machine) {
+        MACHINE.set(machine);
+    }
+
+    /**
+     * Gets the machine last started by a command.
+     *
+     * @return the machine last started by a command, or null if none has been.
+     */
+    static Machine getMachine() {
+        return MACHINE.get();
+    }
+
     /**
      * A simple nested map construct for the optimization of calling commands.
      *
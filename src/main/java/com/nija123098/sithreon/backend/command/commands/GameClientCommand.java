@@ -2,6 +2,7 @@ package com.nija123098.sithreon.backend.command.commands;
 
 import com.nija123098.sithreon.backend.Config;
 import com.nija123098.sithreon.backend.command.Command;
+import com.nija123098.sithreon.backend.command.CommandHandler;
 import com.nija123098.sithreon.backend.command.CommandMethod;
 import com.nija123098.sithreon.backend.machines.GameClient;
 import com.nija123098.sithreon.backend.objects.Competitor;
@@ -20,6 +21,6 @@ public class GameClientCommand extends Command {
     @CommandMethod
     public void command(String code) {
         String[] split = code.split(Pattern.quote(" "));
-        new GameClient(new Competitor(split[0]), Config.authenticateMachines ? split[1] : null);
+        CommandHandler.setMachine(new GameClient(new Competitor(split[0]), Config.authenticateMachines ? split[1] : null));
     }
 }
@@ -2,6 +2,7 @@ package com.nija123098.sithreon.backend.command.commands;
 
 import com.nija123098.sithreon.backend.Config;
 import com.nija123098.sithreon.backend.command.Command;
+import com.nija123098.sithreon.backend.command.CommandHandler;
 import com.nija123098.sithreon.backend.command.CommandMethod;
 import com.nija123098.sithreon.backend.machines.*;
 import com.nija123098.sithreon.backend.util.Log;
@@ -29,27 +30,27 @@ public class MachineCommand extends Command {
             case "super server":
             case "super":
             case "s":
-                new SuperServer();
+                CommandHandler.setMachine(new SuperServer());
                 break;
             case "code checker":
             case "code check":
             case "check":
             case "c":
-                new CheckClient();
+                CommandHandler.setMachine(new CheckClient());
                 break;
             case "game server":
             case "game":
             case "g":
-                new GameServer();
+                CommandHandler.setMachine(new GameServer());
                 break;
             case "code runner":
             case "runner":
             case "r":
-                new GameClient(null, null);
+                CommandHandler.setMachine(new GameClient(null, null));
                 break;
             case "command":
             case "command client":
-                new CommandClient();
+                CommandHandler.setMachine(new CommandClient());
                 break;
             default:
                 Log.ERROR.log("Unrecognized machine type: " + type);
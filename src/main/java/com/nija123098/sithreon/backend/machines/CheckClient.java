@@ -5,6 +5,7 @@ import com.nija123098.sithreon.backend.Machine;
 import com.nija123098.sithreon.backend.networking.Action;
 import com.nija123098.sithreon.backend.networking.MachineAction;
 import com.nija123098.sithreon.backend.networking.ManagedMachineType;
+import com.nija123098.sithreon.backend.networking.ReconnectingSocket;
 import com.nija123098.sithreon.backend.networking.TransferSocket;
 import com.nija123098.sithreon.backend.objects.Repository;
 import com.nija123098.sithreon.backend.util.ConnectionUtil;
@@ -20,22 +21,24 @@ import java.io.IOException;
  * @author nija123098
  */
 public class CheckClient extends Machine {
-    private final TransferSocket superServerSocket;
+    /**
+     * The connection to the {@link SuperServer}, which is made again if it is lost.
+     */
+    private final ReconnectingSocket superServerSocket;
 
     public CheckClient() {
         try {
-            this.superServerSocket = new TransferSocket(this, Config.superServerAddress, Config.externalPort);
+            this.superServerSocket = new ReconnectingSocket(this, Config.superServerAddress, Config.externalPort, (socket) -> socket.write(MachineAction.READY_TO_SERVE, ManagedMachineType.CODE_CHECK));
         } catch (IOException e) {
             ConnectionUtil.throwConnectionException("Unable to establish connection to super server due to IOException", e);
             throw new NoReturnException();
         }
-        this.superServerSocket.registerAuthenticationAction((socket) -> socket.write(MachineAction.READY_TO_SERVE, ManagedMachineType.CODE_CHECK));
     }
 
     @Action(MachineAction.CHECK_REPO)
-    public void check(Repository repository) {
+    public void check(Repository repository, TransferSocket socket) {
         //
-        this.superServerSocket.write(MachineAction.REPO_CODE_REPORT, repository, repository.getHeadHash(), true, "report");// todo implement, have logging here
-        this.superServerSocket.write(MachineAction.READY_TO_SERVE, ManagedMachineType.CODE_CHECK);
+        socket.respond(socket.getRequestId(), MachineAction.REPO_CODE_REPORT, repository, repository.getHeadHash(), true, "report");// todo implement, have logging here
+        socket.write(MachineAction.READY_TO_SERVE, ManagedMachineType.CODE_CHECK);// dropped if the connection was lost, it is announced on reconnecting
     }
 }
@@ -7,6 +7,7 @@ import com.nija123098.sithreon.backend.networking.MachineAction;
 import com.nija123098.sithreon.backend.networking.ManagedMachineType;
 import com.nija123098.sithreon.backend.networking.TransferSocket;
 import com.nija123098.sithreon.backend.objects.Competitor;
+import com.nija123098.sithreon.backend.util.BlobStore;
 import com.nija123098.sithreon.backend.util.ConnectionUtil;
 import com.nija123098.sithreon.backend.util.Log;
 import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
@@ -15,10 +16,16 @@ import com.nija123098.sithreon.game.management.GameArguments;
 import com.nija123098.sithreon.game.management.GameUpdate;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The {@link Machine} representation for running a competitor's code
@@ -31,30 +38,151 @@ public class GameClient extends Machine {
     private final TransferSocket gameServerSocket;
     private final Competitor competitor;
 
+    /**
+     * The number of pieces of competitor data written since credit was last granted.
+     */
+    private int piecesWritten;
+
+    /**
+     * The paths relative to the repository of the files with each content hash being received.
+     */
+    private final Map<String, List<String>> blobPaths = new HashMap<>();
+
+    /**
+     * The sizes of the file contents being received by hash.
+     */
+    private final Map<String, Long> blobSizes = new HashMap<>();
+
+    /**
+     * The open partial files of the contents being received by hash.
+     */
+    private final Map<String, FileChannel> blobSinks = new HashMap<>();
+
     public GameClient(Competitor competitor, String authCode) {
         this.competitor = competitor;
         try {
-            this.gameServerSocket = new TransferSocket(this, Config.gameServerAddress, Config.internalPort);
+            this.gameServerSocket = connectToGameServer(this);
             if (authCode != null) this.gameServerSocket.authenticateWithTemporaryCode(authCode);
         } catch (IOException e) {
             ConnectionUtil.throwConnectionException("Unable to establish connection to game server due to IOException", e);
             throw new NoReturnException();
         }
-        this.gameServerSocket.registerAuthenticationAction((socket) -> socket.write(MachineAction.READY_TO_RECEIVE_COMPETITOR_DATA, competitor));
+        this.gameServerSocket.registerAuthenticationAction((socket) -> socket.write(MachineAction.READY_TO_RECEIVE_COMPETITOR_DATA, competitor, Config.fileTransferWindow));
+    }
+
+    /**
+     * Connects to the {@link GameServer} over {@link Config#gameServerSocketFile} if it exists, otherwise over TCP.
+     *
+     * @param client the client connecting.
+     * @return the connection to the {@link GameServer}.
+     * @throws IOException if the connection can not be made.
+     */
+    private static TransferSocket connectToGameServer(GameClient client) throws IOException {
+        if (Config.gameServerSocketFile != null && !Config.gameServerSocketFile.isEmpty()) {
+            Path file = Paths.get(Config.gameServerSocketFile);
+            if (Files.exists(file)) return new TransferSocket(client, file);
+            Log.WARN.log("Game server socket file " + file + " does not exist, connecting over TCP");
+        }
+        return new TransferSocket(client, Config.gameServerAddress, Config.internalPort);
+    }
+
+    /**
+     * Places the files of the competitor already in the {@link BlobStore}
+     * and requests the contents of the rest from the {@link GameServer}.
+     *
+     * @param paths  the path of each file relative to the repository.
+     * @param hashes the hash of the contents of each file.
+     * @param sizes  the size of each file.
+     * @param socket the sender.
+     */
+    @Action(MachineAction.COMPETITOR_MANIFEST)
+    public void competitorManifest(String[] paths, String[] hashes, Long[] sizes, TransferSocket socket) {
+        if (paths.length != hashes.length || paths.length != sizes.length) {
+            Log.WARN.log("Malformed competitor manifest from " + socket.getConnectionName() + ", closing connection");
+            socket.close();
+            return;
+        }
+        for (int i = 0; i < paths.length; i++) {
+            this.blobPaths.computeIfAbsent(hashes[i], hash -> new ArrayList<>()).add(paths[i]);
+            this.blobSizes.put(hashes[i], sizes[i]);
+        }
+        List<String> missing = new ArrayList<>();
+        for (String hash : new ArrayList<>(this.blobPaths.keySet())) {
+            if (BlobStore.contains(hash)) try {
+                this.placeBlob(hash);
+                continue;
+            } catch (IOException e) {
+                Log.WARN.log("Unable to place cached file contents " + hash + ", requesting them", e);
+            }
+            missing.add(hash);
+        }
+        Log.INFO.log("Requesting " + missing.size() + " of " + hashes.length + " files for competitor " + this.competitor);
+        socket.write(MachineAction.REQUEST_COMPETITOR_BLOBS, (Object) missing.toArray(new String[0]));
     }
 
+    /**
+     * Writes a piece of a competitor file's contents, granting credit for more
+     * once half of {@link Config#fileTransferWindow} pieces are written.
+     * <p>
+     * The piece is written to the partial file straight from the received frame,
+     * so memory use is bounded by {@link Config#fileTransferPieceSize} regardless of the file's size.
+     *
+     * @param hash   the hash of the file contents.
+     * @param offset the index in the file contents of the piece.
+     * @param data   a view of the bytes of the piece, only valid during this call.
+     * @param socket the sender.
+     */
     @Action(MachineAction.SEND_COMPETITOR_DATA)
-    public void sendCompetitorData(String fileLocation, byte[] data, TransferSocket socket) {
+    public void sendCompetitorData(String hash, Long offset, ByteBuffer data, TransferSocket socket) {
+        Long size = this.blobSizes.get(hash);
+        if (size == null) {
+            Log.WARN.log("Received competitor data not in the manifest from " + socket.getConnectionName() + ", closing connection");
+            socket.close();
+            return;
+        }
+        if (offset < 0 || offset > size - data.remaining()) {
+            Log.WARN.log("Received competitor data outside of file contents " + hash + " from " + socket.getConnectionName() + ", closing connection");
+            socket.close();
+            return;
+        }
         try {
-            Path path = Paths.get(this.competitor.getRepository().getLocalRepoLocation(), fileLocation);
-            Files.createDirectories(path.getParent());
-            Files.write(path, data, StandardOpenOption.CREATE);
-            socket.write(MachineAction.READY_FOR_NEXT_FILE);
+            FileChannel sink = this.blobSinks.get(hash);
+            if (sink == null) {
+                sink = FileChannel.open(BlobStore.getPartialPath(hash), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                this.blobSinks.put(hash, sink);
+            }
+            long position = offset;
+            while (data.hasRemaining()) position += sink.write(data, position);
+            if (position >= size) {
+                this.blobSinks.remove(hash).close();
+                if (!BlobStore.commit(hash)) {// the competitor can not run without it
+                    Log.WARN.log("Received file contents not matching hash " + hash + " for competitor " + this.competitor + ", failing the load");
+                    this.close();
+                    return;
+                }
+                this.placeBlob(hash);
+            }
+            if (++this.piecesWritten >= PieceSender.getGrantThreshold(Config.fileTransferWindow)) {
+                socket.write(MachineAction.READY_FOR_NEXT_FILE, this.piecesWritten);
+                this.piecesWritten = 0;
+            }
         } catch (IOException e) {
-            Log.ERROR.log("Unable to write file " + fileLocation + " in game runner loading for competitor " + this.competitor);
+            Log.ERROR.log("Unable to write file contents " + hash + " in game runner loading for competitor " + this.competitor, e);
         }
     }
 
+    /**
+     * Copies file contents from the {@link BlobStore} to each path in the repository with it.
+     *
+     * @param hash the hash of the file contents.
+     * @throws IOException if copying throws an {@link IOException}.
+     */
+    private void placeBlob(String hash) throws IOException {
+        for (String path : this.blobPaths.get(hash)) BlobStore.copyTo(hash, Paths.get(this.competitor.getRepository().getLocalRepoLocation(), path).toFile());
+        this.blobPaths.remove(hash);
+        this.blobSizes.remove(hash);
+    }
+
     @Action(MachineAction.COMPETITOR_DATA_COMPLETE)
     public void competitorDataComplete() {
         // todo final setup
@@ -4,6 +4,7 @@ import com.nija123098.sithreon.backend.Config;
 import com.nija123098.sithreon.backend.Machine;
 import com.nija123098.sithreon.backend.networking.*;
 import com.nija123098.sithreon.backend.objects.Competitor;
+import com.nija123098.sithreon.backend.objects.Lineup;
 import com.nija123098.sithreon.backend.objects.Match;
 import com.nija123098.sithreon.backend.objects.Repository;
 import com.nija123098.sithreon.backend.objects.Team;
@@ -18,11 +19,18 @@ import org.apache.commons.lang3.tuple.MutablePair;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -33,43 +41,151 @@ import java.util.stream.Collectors;
  * @author nija123098
  */
 public class GameServer extends Machine {
-    private final TransferSocket superServerSocket;
+    /**
+     * The connection to the {@link SuperServer}, which is made again if it is lost.
+     */
+    private final ReconnectingSocket superServerSocket;
+
+    /**
+     * The winners of finished {@link Match}s by match, until their report is written to the {@link SuperServer}.
+     */
+    private final Map<Match, Lineup> unreportedMatches = new ConcurrentHashMap<>();
+
+    /**
+     * The connection {@link MachineAction#READY_TO_SERVE} was last announced on, so it is not announced twice.
+     */
+    private TransferSocket readySocket;
     private final AtomicReference<GameManager> gameManager = new AtomicReference<>();
     private final AtomicReference<Match> match = new AtomicReference<>();
     private final AtomicReference<MutablePair<TransferSocket, TransferSocket>> runnerInstances = new AtomicReference<>();
-    private final Map<TransferSocket, List<File>> filesLeftToTransfer = new HashMap<>();
-    private final Map<TransferSocket, Integer> originPathLength = new HashMap<>();
+    /**
+     * The number of {@link CompetitorManifest}s to keep, for competitors playing several matches at a commit.
+     */
+    private static final int MANIFEST_CACHE_SIZE = 64;
+
+    /**
+     * The recently used {@link CompetitorManifest}s by repository and commit hash.
+     */
+    private static final Map<String, CompetitorManifest> MANIFESTS = Collections.synchronizedMap(new LinkedHashMap<String, CompetitorManifest>(16, .75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompetitorManifest> eldest) {
+            return this.size() > MANIFEST_CACHE_SIZE;
+        }
+    });
+    private final Map<TransferSocket, CompetitorTransfer> competitorTransfers = new ConcurrentHashMap<>();
+
+    /**
+     * The Unix domain socket file {@link GameClient}s are accepted on, or null if they connect over TCP.
+     */
+    private final Path socketFile;
 
     public GameServer() {
         new SocketAcceptor(this, Config.internalPort);
+        this.socketFile = this.acceptOnSocketFile();
         try {
-            this.superServerSocket = new TransferSocket(this, Config.superServerAddress, Config.externalPort);
+            this.superServerSocket = new ReconnectingSocket(this, Config.superServerAddress, Config.externalPort, this::connectedToSuperServer);
         } catch (IOException e) {
             ConnectionUtil.throwConnectionException("Unable to establish connection to super server due to IOException", e);
             throw new NoReturnException();
         }
-        this.superServerSocket.registerAuthenticationAction((socket) -> socket.write(MachineAction.READY_TO_SERVE, ManagedMachineType.GAME_SERVER));
+    }
+
+    /**
+     * Gets the absolute path of {@link Config#gameServerSocketFile}, which is the same inside runner containers.
+     *
+     * @return the absolute path of the socket file, or null if it is not configured.
+     */
+    public static Path getSocketFile() {
+        if (Config.gameServerSocketFile == null || Config.gameServerSocketFile.isEmpty()) return null;
+        return Paths.get(Config.gameServerSocketFile).toAbsolutePath();
+    }
+
+    /**
+     * Accepts {@link GameClient}s on {@link Config#gameServerSocketFile} if it is configured.
+     *
+     * @return the socket file accepted on, or null if {@link GameClient}s connect over TCP.
+     */
+    private Path acceptOnSocketFile() {
+        Path file = getSocketFile();
+        if (file == null) return null;
+        if (file.getParent() == null) {// it's directory is mounted into runner containers
+            Log.WARN.log("Socket file " + file + " has no directory to mount, game clients will connect over TCP");
+            return null;
+        }
+        try {
+            new SocketAcceptor(this, file);
+            return file;
+        } catch (IOException e) {
+            Log.WARN.log("Unable to accept on socket file " + file + ", game clients will connect over TCP", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reports the {@link Match}s finished while disconnected then announces
+     * this is ready to serve if it is not running a match, each time the
+     * connection to the {@link SuperServer} is authenticated.
+     *
+     * @param socket the authenticated connection.
+     */
+    private void connectedToSuperServer(TransferSocket socket) {
+        this.unreportedMatches.forEach((match, winners) -> this.reportMatch(socket, -1, match, winners));
+        this.announceReady(socket);
+    }
+
+    /**
+     * Announces {@link MachineAction#READY_TO_SERVE} on a connection to the {@link SuperServer}
+     * if no match is running and it has not been announced on the connection.
+     *
+     * @param socket the authenticated connection.
+     */
+    private synchronized void announceReady(TransferSocket socket) {
+        if (this.gameManager.get() != null || socket.isClosed() || this.readySocket == socket) return;
+        this.readySocket = socket;
+        socket.write(MachineAction.READY_TO_SERVE, ManagedMachineType.GAME_SERVER);
+    }
+
+    /**
+     * Writes the result of a {@link Match} to the {@link SuperServer}, it stays unreported until written.
+     *
+     * @param socket    the connection to the {@link SuperServer}.
+     * @param requestId the correlation id of the {@link MachineAction#RUN_GAME} request, or -1 if it's connection was lost.
+     * @param match     the finished match.
+     * @param winners   the winners of the match.
+     */
+    private void reportMatch(TransferSocket socket, int requestId, Match match, Lineup winners) {
+        socket.respond(requestId, MachineAction.MATCH_COMPLETE, match, winners).whenComplete((ignored, throwable) -> {
+            if (throwable == null) this.unreportedMatches.remove(match, winners);
+        });
     }
 
     /**
      * Notification to run a game.
      *
-     * @param match the {@link Match} to run.
+     * @param match  the {@link Match} to run.
+     * @param socket the connection to the {@link SuperServer} which requested the match.
      */
     @Action(MachineAction.RUN_GAME)
-    public void runGame(Match match) {
+    public void runGame(Match match, TransferSocket socket) {
         if (this.match.get() != null) Log.ERROR.log("Unexpected RUN_GAME command for match " + match);
+        int requestId = socket.getRequestId();// only valid while acting
+        synchronized (this) {
+            this.readySocket = null;// the announcement was used
+        }
         AtomicBoolean winner = new AtomicBoolean();
         this.gameManager.set(new GameManager(match, team -> {
             if (winner.getAndSet(true)) return;
             this.gameManager.get().gameEnd.set(true);
             Log.INFO.log("Team " + team + " won match " + match);
-            this.superServerSocket.write(MachineAction.MATCH_COMPLETE, match, team.getLineup());
+            this.unreportedMatches.put(match, team.getLineup());
+            if (!socket.isClosed()) this.reportMatch(socket, requestId, match, team.getLineup());
+            else// the request was lost with it's connection, so the result is reported as it's own by connectedToSuperServer
+                Log.INFO.log("Match " + match + " finished while disconnected from super server, reporting it once reconnected");
             this.match.set(null);// Reset state
             this.runnerInstances.set(null);
             this.gameManager.getAndSet(null).kill();// may want additional warning for complete end.
             Log.INFO.log("Set up for next round, sending READY_TO_SERVE");
-            this.superServerSocket.write(MachineAction.READY_TO_SERVE, ManagedMachineType.GAME_SERVER);
+            this.superServerSocket.get().registerAuthenticationAction(this::announceReady);
         }));
     }
 
@@ -93,41 +209,104 @@ public class GameServer extends Machine {
 
     /**
      * Indicates readiness to relieve the {@link Competitor}'s files.
+     * <p>
+     * The {@link GameClient} is sent a {@link CompetitorManifest} of the files
+     * by content hash, and only the contents it does not have are sent after.
      *
      * @param competitor the {@link Competitor} for getting the files of.
+     * @param window     the number of pieces the {@link GameClient} allows to be unacknowledged.
      * @param socket     the sender.
      */
     @Action(MachineAction.READY_TO_RECEIVE_COMPETITOR_DATA)
-    public void readyToReceiveCompetitorData(Competitor competitor, TransferSocket socket) {
+    public void readyToReceiveCompetitorData(Competitor competitor, Integer window, TransferSocket socket) {
         this.gameManager.get().relateConnection(competitor, socket);
-        competitor.getRepository().getSource(competitor.getHash());
-        List<File> files = new LinkedList<>();
-        this.filesLeftToTransfer.put(socket, files);
-        this.originPathLength.put(socket, competitor.getRepository().getLocalRepoLocation().length());
+        CompetitorManifest manifest = getManifest(competitor);
         try {
-            FileUtil.walk(new File(competitor.getRepository().getLocalRepoLocation()), path -> !path.getName().endsWith(".git"), path -> {
-                if (path.isDirectory()) return;
-                files.add(path);
-            });
+            this.competitorTransfers.put(socket, new CompetitorTransfer(manifest, window));
         } catch (IOException e) {
-            Log.ERROR.log("Unexpected IOException reading data to send for " + competitor, e);
+            Log.ERROR.log("Unable to open competitor pack " + manifest.pack, e);
         }
-        readyForNextFile(socket);
+        socket.write(MachineAction.COMPETITOR_MANIFEST, manifest.paths, manifest.hashes, manifest.sizes);
     }
 
-    @Action(MachineAction.READY_FOR_NEXT_FILE)
-    public void readyForNextFile(TransferSocket socket) {
-        if (this.filesLeftToTransfer.get(socket).isEmpty()) {
-            socket.write(MachineAction.COMPETITOR_DATA_COMPLETE);
-            this.filesLeftToTransfer.remove(socket);
-            this.originPathLength.remove(socket);
+    /**
+     * Gets the {@link CompetitorManifest} of a {@link Competitor}'s files, hashing them if it is not cached.
+     *
+     * @param competitor the {@link Competitor} to get the files of.
+     * @return the manifest of the competitor's files.
+     */
+    private static CompetitorManifest getManifest(Competitor competitor) {
+        String key = competitor.getRepository() + "@" + competitor.getHash();
+        CompetitorManifest manifest = MANIFESTS.get(key);
+        if (manifest != null) return manifest;
+        Lock sourceLock = competitor.getRepository().getSourceLock();
+        sourceLock.lock();// the checkout must not change while hashing
+        try {
+            competitor.getRepository().getSource(competitor.getHash());
+            String origin = competitor.getRepository().getLocalRepoLocation();
+            List<File> files = new ArrayList<>();
+            try {
+                FileUtil.walk(new File(origin), path -> !path.getName().endsWith(".git"), path -> {
+                    if (path.isDirectory()) return;
+                    files.add(path);
+                });
+                manifest = new CompetitorManifest(files, origin.length(), Paths.get(Config.tmpDirectory, "packs", key.replaceAll("[^A-Za-z0-9.@-]", "_") + ".pack"));
+            } catch (IOException e) {
+                Log.ERROR.log("Unexpected IOException reading data to send for " + competitor, e);
+                throw new NoReturnException();
+            }
+        } finally {
+            sourceLock.unlock();
+        }
+        MANIFESTS.put(key, manifest);
+        return manifest;
+    }
+
+    /**
+     * Receives the hashes of the files a {@link GameClient} does not have, to send them.
+     *
+     * @param hashes the hashes of the file contents to send.
+     * @param socket the sender.
+     */
+    @Action(MachineAction.REQUEST_COMPETITOR_BLOBS)
+    public void requestCompetitorBlobs(String[] hashes, TransferSocket socket) {
+        CompetitorTransfer transfer = this.competitorTransfers.get(socket);
+        if (transfer == null) {
+            Log.WARN.log("Connection " + socket.getConnectionName() + " requested competitor data without a manifest, closing connection");
+            socket.close();
             return;
         }
-        File file = this.filesLeftToTransfer.get(socket).remove(0);
-        try {
-            socket.write(MachineAction.SEND_COMPETITOR_DATA, file.toString().substring(this.originPathLength.get(socket)), Files.readAllBytes(file.toPath()));
-        } catch (IOException e) {
-            Log.ERROR.log("IOException reading file: " + file, e);
+        for (String hash : hashes) {
+            if (transfer.manifest.offsets.containsKey(hash)) transfer.pieces.add(hash);
+            else Log.WARN.log("Connection " + socket.getConnectionName() + " requested a blob not in it's manifest: " + hash);
+        }
+        this.sendCompetitorData(socket, transfer, 0);
+    }
+
+    /**
+     * Receives credit from a {@link GameClient} for the pieces of files it has written.
+     *
+     * @param credits the number of pieces written since the last credit.
+     * @param socket  the sender.
+     */
+    @Action(MachineAction.READY_FOR_NEXT_FILE)
+    public void readyForNextFile(Integer credits, TransferSocket socket) {
+        CompetitorTransfer transfer = this.competitorTransfers.get(socket);
+        if (transfer == null) Log.DEBUG.log("Received credit after competitor data was sent to " + socket.getConnectionName());
+        else this.sendCompetitorData(socket, transfer, credits);
+    }
+
+    /**
+     * Sends pieces of the {@link Competitor}'s files while there is credit for them.
+     *
+     * @param socket   the {@link GameClient} connection.
+     * @param transfer the state of the transfer.
+     * @param credits  the number of pieces credit was granted for.
+     */
+    private void sendCompetitorData(TransferSocket socket, CompetitorTransfer transfer, int credits) {
+        if (transfer.send(socket, credits)) {
+            this.competitorTransfers.remove(socket);
+            socket.write(MachineAction.COMPETITOR_DATA_COMPLETE).whenComplete((ignored, throwable) -> transfer.close());// after every piece on the same lane
         }
     }
 
@@ -158,12 +337,132 @@ public class GameServer extends Machine {
         return new ContainerProcess(this, competitor, gameRules, System.out, System.err);// todo add sending to file and requests
     }
 
+    /**
+     * The files of a {@link Competitor} at a commit by git blob hash,
+     * with the contents of each hash packed once into a single file.
+     */
+    private static class CompetitorManifest {
+        /**
+         * The path of each file relative to the repository.
+         */
+        private final String[] paths;
+
+        /**
+         * The hash of the contents of each file.
+         */
+        private final String[] hashes;
+
+        /**
+         * The size of each file.
+         */
+        private final Long[] sizes;
+
+        /**
+         * The file each hash's contents are packed into.
+         */
+        private final Path pack;
+
+        /**
+         * The index in the pack of the contents of each hash.
+         */
+        private final Map<String, Long> offsets = new HashMap<>();
+
+        /**
+         * The size of the contents of each hash.
+         */
+        private final Map<String, Long> lengths = new HashMap<>();
+
+        private CompetitorManifest(List<File> files, int originPathLength, Path pack) throws IOException {
+            this.paths = new String[files.size()];
+            this.hashes = new String[files.size()];
+            this.sizes = new Long[files.size()];
+            this.pack = pack;
+            Files.createDirectories(pack.getParent());
+            Path partial = pack.resolveSibling(pack.getFileName() + ".tmp");
+            try (FileChannel packChannel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                File file;
+                for (int i = 0; i < this.paths.length; i++) {
+                    file = files.get(i);
+                    this.paths[i] = file.toString().substring(originPathLength);
+                    this.hashes[i] = BlobStore.hash(file.toPath());
+                    this.sizes[i] = file.length();
+                    if (this.offsets.containsKey(this.hashes[i])) continue;// identical contents are packed once
+                    this.offsets.put(this.hashes[i], packChannel.position());
+                    this.lengths.put(this.hashes[i], this.sizes[i]);
+                    try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        long position = 0;
+                        while (position < this.sizes[i]) position += fileChannel.transferTo(position, this.sizes[i] - position, packChannel);
+                    }
+                }
+            }
+            Files.move(partial, pack, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);// open channels to a replaced pack stay valid
+        }
+    }
+
+    /**
+     * The state of streaming a {@link Competitor}'s files to a {@link GameClient}.
+     * <p>
+     * Pieces are written as regions of the {@link CompetitorManifest#pack}
+     * so their contents are not read onto the heap.
+     */
+    private static class CompetitorTransfer {
+        /**
+         * The manifest of the competitor's files.
+         */
+        private final CompetitorManifest manifest;
+
+        /**
+         * The open pack of the manifest, closed once the transfer is written or fails.
+         */
+        private final FileChannel pack;
+
+        /**
+         * The pieces of the requested file contents left to send.
+         */
+        private final PieceSender pieces;
+
+        private CompetitorTransfer(CompetitorManifest manifest, int window) throws IOException {
+            this.manifest = manifest;
+            this.pack = FileChannel.open(manifest.pack, StandardOpenOption.READ);
+            this.pieces = new PieceSender(window, Config.fileTransferPieceSize, manifest.lengths::get);
+        }
+
+        /**
+         * Sends pieces of the requested contents of up to {@link Config#fileTransferPieceSize} bytes while there is credit.
+         *
+         * @param socket  the {@link GameClient} connection.
+         * @param credits the number of pieces credit was granted for.
+         * @return true once, when every piece of the requested contents has been sent.
+         */
+        private boolean send(TransferSocket socket, int credits) {
+            return this.pieces.send(credits, (hash, offset, length) -> socket.writeFile(MachineAction.SEND_COMPETITOR_DATA, this.pack, this.manifest.offsets.get(hash) + offset, length, hash, offset).whenComplete((ignored, throwable) -> {
+                if (throwable != null) this.close();
+            }));
+        }
+
+        /**
+         * Closes the pack.
+         */
+        private void close() {
+            try {
+                this.pack.close();
+            } catch (IOException e) {
+                Log.WARN.log("IOException closing competitor pack " + this.manifest.pack, e);
+            }
+        }
+    }
+
     private class ContainerProcess {
         private final String containerName;
 
         private ContainerProcess(GameServer gameServer, Competitor competitor, GameRules gameRules, OutputStream output, OutputStream error) {
             this.containerName = competitor.getMatchId().replace('+', '-').replace('/', '_').replace('=', '-') + competitor.getTeamNumber();// match ID contains padding (=), but '=' can't be part of a container name.
-            List<String> strings = new ArrayList<>(Arrays.asList("docker", "run", "--name", this.containerName, "--rm", "--no-healthcheck", "-e", "COMPETITOR=" + competitor, "-e", "AUTH_CODE=" + gameServer.superServerSocket.getOneUseAuthenticationCode()));
+            List<String> strings = new ArrayList<>(Arrays.asList("docker", "run", "--name", this.containerName, "--rm", "--no-healthcheck", "-e", "COMPETITOR=" + competitor, "-e", "AUTH_CODE=" + gameServer.superServerSocket.get().getOneUseAuthenticationCode()));
+            Path socketDirectory = gameServer.socketFile == null ? null : gameServer.socketFile.getParent();
+            if (socketDirectory != null) {// the directory is mounted since the file is replaced if the server restarts
+                String directory = socketDirectory.toString();
+                strings.addAll(Arrays.asList("-v", directory + ":" + directory, "--network", "none"));
+            }
             strings.addAll(gameRules.getDockerRules(competitor));
             strings.add(competitor.getRepository().getRepositoryConfig().buildType.getContainer());
             String joinedArgs = StringUtil.join(" ", strings.toArray(new String[0]));
@@ -0,0 +1,128 @@
+package com.nija123098.sithreon.backend.machines;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.ToLongFunction;
+
+/**
+ * The credit based flow control for sending file contents in pieces.
+ * <p>
+ * The receiver announces a window of pieces it allows to be unacknowledged,
+ * then grants credit back once it has written {@link PieceSender#getGrantThreshold(int)} pieces.
+ * The end of the transfer is signaled as soon as the last piece is written,
+ * since credit left below the threshold is never granted.
+ *
+ * @author nija123098
+ */
+class PieceSender {
+    /**
+     * The maximum number of bytes in a piece.
+     */
+    private final int pieceSize;
+
+    /**
+     * Gets the length of file contents by their hash.
+     */
+    private final ToLongFunction<String> lengths;
+
+    /**
+     * The hashes of the file contents requested and not yet started.
+     */
+    private final Deque<String> hashes = new ArrayDeque<>();
+
+    /**
+     * The hash of the contents being sent, or null between contents.
+     */
+    private String hash;
+
+    /**
+     * The number of pieces that may be sent before more credit is granted.
+     */
+    private int credits;
+
+    /**
+     * The length of the contents being sent.
+     */
+    private long length;
+
+    /**
+     * The number of bytes of the contents being sent already sent.
+     */
+    private long offset;
+
+    /**
+     * If every piece has been written and the end of the transfer reported.
+     */
+    private boolean finished;
+
+    /**
+     * Makes an instance for a receiver's window.
+     *
+     * @param window    the number of pieces the receiver allows to be unacknowledged.
+     * @param pieceSize the maximum number of bytes in a piece.
+     * @param lengths   gets the length of file contents by their hash.
+     */
+    PieceSender(int window, int pieceSize, ToLongFunction<String> lengths) {
+        this.credits = window;
+        this.pieceSize = pieceSize;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Gets the number of pieces a receiver writes before granting credit for them.
+     *
+     * @param window the number of pieces the receiver allows to be unacknowledged.
+     * @return the number of pieces written before granting credit.
+     */
+    static int getGrantThreshold(int window) {
+        return Math.max(1, window / 2);
+    }
+
+    /**
+     * Adds file contents to send.
+     *
+     * @param hash the hash of the file contents.
+     */
+    synchronized void add(String hash) {
+        this.hashes.add(hash);
+    }
+
+    /**
+     * Writes pieces of the requested contents while there is credit.
+     *
+     * @param credits the number of pieces credit was granted for.
+     * @param writer  the writer of each piece.
+     * @return true once, when every piece of the requested contents has been written.
+     */
+    synchronized boolean send(int credits, PieceWriter writer) {
+        if (this.finished) return false;
+        this.credits += credits;
+        while (true) {
+            if (this.hash == null) {
+                if ((this.hash = this.hashes.poll()) == null) return this.finished = true;// regardless of credit
+                this.length = this.lengths.applyAsLong(this.hash);
+                this.offset = 0;
+            }
+            if (this.credits <= 0) return false;
+            long piece = Math.min(this.pieceSize, this.length - this.offset);
+            writer.write(this.hash, this.offset, piece);
+            --this.credits;
+            this.offset += piece;
+            if (this.offset >= this.length) this.hash = null;// empty contents are sent as a single empty piece
+        }
+    }
+
+    /**
+     * Writes a piece of file contents.
+     */
+    interface PieceWriter {
+        /**
+         * Writes a piece of file contents.
+         *
+         * @param hash   the hash of the file contents.
+         * @param offset the index in the file contents of the piece.
+         * @param length the number of bytes in the piece.
+         */
+        void write(String hash, long offset, long length);
+    }
+}
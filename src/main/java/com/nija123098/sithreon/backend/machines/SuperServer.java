@@ -15,9 +15,11 @@ import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
 import com.nija123098.sithreon.game.management.GameRules;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -47,8 +49,11 @@ public class SuperServer extends Machine {
      * {@link CheckClient}s are sorted by their priority as reported by their initial connection.
      */
     private final DualPriorityResourceManager<Repository, TransferSocket> codeCheckResourceManager = new DualPriorityResourceManager<>(((repository, socket) -> {
-        socket.write(MachineAction.CHECK_REPO, repository);
-        socket.setOnClose(() -> this.codeCheckResourceManager.giveFirst(repository));
+        socket.request(Config.checkRequestTimeout, MachineAction.CHECK_REPO, repository).whenComplete((report, throwable) -> {
+            if (throwable == null) return;// the report is acted upon by readReport
+            Log.WARN.log("Check of " + repository + " by " + socket.getConnectionName() + " failed, returning it to the queue", throwable);
+            this.codeCheckResourceManager.giveFirst(repository);
+        });
     }));
 
     /**
@@ -57,18 +62,27 @@ public class SuperServer extends Machine {
      * {@link GameServer}s are sorted by their priority as reported by their initial connection.
      */
     private final DualPriorityResourceManager<Match, TransferSocket> gameRunnerResourceManager = new DualPriorityResourceManager<>((match, socket) -> {
-        socket.write(MachineAction.RUN_GAME, match);
-        socket.setOnClose(() -> {// nulled on completion
+        this.matchesInProgress.put(match, socket);
+        socket.request(Config.matchRequestTimeout, MachineAction.RUN_GAME, match).whenComplete((result, throwable) -> {
+            if (throwable instanceof TimeoutException && !socket.isClosed()) {// still running, heartbeats close the connection if it is not
+                Log.WARN.log("Match " + match + " on " + socket.getConnectionName() + " has run for over " + Config.matchRequestTimeout + "ms, it will be returned to the queue if the connection is lost");
+                socket.getCloseFuture().thenRun(() -> {
+                    if (!this.matchesInProgress.remove(match, socket)) return;// invalidated or complete
+                    Log.WARN.log("Connection to " + socket.getConnectionName() + " running match " + match + " was lost, returning it to the queue");
+                    this.gameRunnerResourceManager.giveFirst(match);
+                });
+                return;
+            }
+            if (this.matchesInProgress.remove(match) == null || throwable == null) return;// invalidated or complete
+            Log.WARN.log("Match " + match + " on " + socket.getConnectionName() + " failed, returning it to the queue", throwable);
             this.gameRunnerResourceManager.giveFirst(match);
-            this.matchesInProgress.remove(match);
         });
-        this.matchesInProgress.put(match, socket);
     });
 
     /**
      * A {@link Map} of the {@link Match}s under way, paired with the {@link TransferSocket} of the {@link GameServer} running it.
      */
-    private final Map<Match, TransferSocket> matchesInProgress = new HashMap<>();
+    private final Map<Match, TransferSocket> matchesInProgress = new ConcurrentHashMap<>();
 
     /**
      * The {@link Queue} responsible for storing the order of {@link Repository}s to check for updates.
@@ -130,7 +144,6 @@ public class SuperServer extends Machine {
     public void readReport(Repository repository, String hash, Boolean result, String report, TransferSocket socket) {
         Database.REPO_LAST_HEAD_HASH.put(repository, hash);
         Database.REPO_APPROVAL.put(repository, result);
-        socket.setOnClose(null);
         if (!result) Log.INFO.log("Repository " + repository + " failed test: " + report);
         else {
             Log.INFO.log("Repository " + repository + " of hash " + hash + " passed code inspection: " + report);
@@ -149,10 +162,12 @@ public class SuperServer extends Machine {
      */
     @Action(MachineAction.MATCH_COMPLETE)
     public void matchComplete(Match match, Lineup winners, TransferSocket socket) {
+        this.matchesInProgress.remove(match);// a response after the request timed out completes nothing
+        if (this.gameRunnerResourceManager.removeFirst(match))// requeued when it's connection was lost
+            Log.INFO.log("Match " + match + " was completed by " + socket.getConnectionName() + " while disconnected, removed it from the queue");
         Database.MATCHES_TO_DO.remove(match);
         Database.MATCHUP_WINNERS.put(match.getMatchUp(), winners);// must insert MatchUps
         Log.INFO.log("Match " + match + " complete and was won by " + winners);
-        socket.setOnClose(null);
     }
 
     /**
@@ -13,21 +13,43 @@ import org.bouncycastle.asn1.x509.Extensions;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.cert.*;
 import java.security.interfaces.RSAPublicKey;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Certificate {
     /**
-     * Map of all serial number {@link BigInteger}s from all received certificates mapped to the certificate instance.
+     * The maximum number of untrusted certificates to keep in {@link Certificate#CERTIFICATE_CACHE}.
+     */
+    private static final int CERTIFICATE_CACHE_SIZE = 1024;
+
+    /**
+     * Map of recently used serial number {@link BigInteger}s from received certificates mapped to the certificate instance.
      * <p>
      * Using hash would prevent malicious attacks to prevent authentication
      * using invalid certificates with known certificate serial numbers.
      */
-    private static final Map<BigInteger, Certificate> CERTIFICATE_CACHE = new HashMap<>();
+    private static final Map<BigInteger, Certificate> CERTIFICATE_CACHE = Collections.synchronizedMap(new LinkedHashMap<BigInteger, Certificate>(16, .75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BigInteger, Certificate> eldest) {
+            return this.size() > CERTIFICATE_CACHE_SIZE;
+        }
+    });
+
+    /**
+     * Map of the serial numbers of trusted root certificates mapped to the certificate instance, which are never evicted.
+     */
+    private static final Map<BigInteger, Certificate> TRUSTED_CERTIFICATES = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented when a certificate's trust is revoked, invalidating memoized verifications of chains it may root.
+     */
+    private static final AtomicInteger TRUST_GENERATION = new AtomicInteger();
 
     static {
         loadKeystore(Config.trustedCertificateStorage, true);
@@ -48,7 +70,7 @@ public class Certificate {
                 alias = aliases.nextElement();
                 X509Certificate x509Certificate = (X509Certificate) keyStore.getCertificate(alias);
                 try {
-                    Certificate.getCertificate(x509Certificate).trust.set(trust);
+                    Certificate.getCertificate(x509Certificate).setTrust(trust);
                 } catch (SithreonSecurityException e) {
                     Log.INFO.log("Certificate " + alias + " expired", e);
                 }
@@ -65,6 +87,8 @@ public class Certificate {
      * @return the instance representing the given {@link X509Certificate}.
      */
     public static Certificate getCertificate(X509Certificate certificate) {
+        Certificate trusted = TRUSTED_CERTIFICATES.get(certificate.getSerialNumber());
+        if (trusted != null) return trusted;
         return CERTIFICATE_CACHE.computeIfAbsent(certificate.getSerialNumber(), serial -> new Certificate(certificate));
     }
 
@@ -90,7 +114,8 @@ public class Certificate {
      * @return the instance represented by the serial number or null if the instance is not cached.
      */
     public static Certificate getCertificate(BigInteger serial) {
-        return CERTIFICATE_CACHE.get(serial);
+        Certificate trusted = TRUSTED_CERTIFICATES.get(serial);
+        return trusted != null ? trusted : CERTIFICATE_CACHE.get(serial);
     }
 
     /**
@@ -112,9 +137,20 @@ public class Certificate {
     private final AtomicBoolean trust = new AtomicBoolean();
 
     /**
-     * The time the certificate will become invalid.
+     * The time until which the certificate's chain was verified to be valid, the earliest time
+     * a certificate of the chain becomes invalid, or 0 if the chain has not been verified.
      */
-    private final AtomicLong trustTime = new AtomicLong();
+    private volatile long trustTime;
+
+    /**
+     * The {@link Certificate#TRUST_GENERATION} when the chain was verified.
+     */
+    private volatile int trustGeneration;
+
+    /**
+     * The permissions parsed from the certificate, or null if they have not been parsed.
+     */
+    private volatile EnumSet<MachineAction> allowedActions;
 
     /**
      * The wrapped {@link X509Certificate}.
@@ -122,26 +158,29 @@ public class Certificate {
     private final X509Certificate certificate;
 
     /**
-     * Constructs and puts into the cache.
+     * Constructs an instance, which is put into the cache by {@link Certificate#getCertificate(X509Certificate)}.
      *
      * @param certificate the wrapped {@link X509Certificate}.
      */
     private Certificate(X509Certificate certificate) {
         this.certificate = certificate;
-        CERTIFICATE_CACHE.put(this.getSerialNumber(), this);
     }
 
     /**
      * Checks if the certificate is invalid.
+     * <p>
+     * A successful check is remembered until a certificate of the chain becomes
+     * invalid or trust is revoked, so checking a known certificate is cheap.
      *
      * @throws SithreonSecurityException if the certificate is invalid.
      */
     public void check() {
-        if (this.trustTime.get() != 0) {
-            if (this.trustTime.get() < System.currentTimeMillis()) {
-                throw new SithreonSecurityException("Invalid timing for certificate");
-            }
+        long trustTime = this.trustTime;
+        if (trustTime != 0 && this.trustGeneration == TRUST_GENERATION.get()) {
+            if (trustTime < System.currentTimeMillis()) throw new SithreonSecurityException("Invalid timing for certificate");
+            return;
         }
+        int generation = TRUST_GENERATION.get();// before checking, so a revocation during the check is not missed
         if (this.certificate == null) throw new SithreonSecurityException("Null certificate provided");
         if (!this.certificate.getPublicKey().getAlgorithm().equals("RSA"))
             throw new SithreonSecurityException("Non-RSA key used in certificate");
@@ -159,7 +198,7 @@ public class Certificate {
             publicKey = this.certificate.getPublicKey();
             if (!this.trust.get()) throw new SithreonSecurityException("Untrusted root certificate");
         } else {
-            parentCertificate = CERTIFICATE_CACHE.get(bigInteger);
+            parentCertificate = getCertificate(bigInteger);
             if (parentCertificate == null) throw new SithreonSecurityException("No valid parent certificate");
             try {
                 parentCertificate.check();
@@ -180,11 +219,22 @@ public class Certificate {
         } catch (InvalidKeyException e) {
             throw new SithreonSecurityException("Invalid signature");
         }
-        this.trustTime.set(parentCertificate == null ? this.certificate.getNotAfter().getTime() : Math.min(this.certificate.getNotAfter().getTime(), this.certificate.getNotAfter().getTime()));
+        this.trustGeneration = generation;
+        this.trustTime = parentCertificate == null ? this.certificate.getNotAfter().getTime() : Math.min(this.certificate.getNotAfter().getTime(), parentCertificate.trustTime);
     }
 
+    /**
+     * Sets if the certificate is a trusted root certificate, keeping trusted certificates from being evicted.
+     *
+     * @param trust if the certificate should be trusted.
+     */
     public void setTrust(boolean trust) {
         this.trust.set(trust);
+        if (trust) TRUSTED_CERTIFICATES.put(this.getSerialNumber(), this);
+        else {
+            TRUSTED_CERTIFICATES.remove(this.getSerialNumber(), this);
+            TRUST_GENERATION.incrementAndGet();
+        }
     }
 
     /**
@@ -193,10 +243,14 @@ public class Certificate {
      * @return an {@link EnumSet<MachineAction>} of the permissions.
      */
     public EnumSet<MachineAction> allowedActions() {
-        EnumSet<MachineAction> enumSet = EnumSet.noneOf(MachineAction.class);
-        byte[] bytes = this.certificate.getExtensionValue(Config.certificatePermissionOID);
-        enumSet.addAll(Arrays.asList(ObjectSerialization.deserialize(MachineAction[].class, Arrays.copyOfRange(bytes, 2, bytes.length))));
-        return enumSet;
+        EnumSet<MachineAction> enumSet = this.allowedActions;
+        if (enumSet == null) {// racing threads parse the same set
+            enumSet = EnumSet.noneOf(MachineAction.class);
+            byte[] bytes = this.certificate.getExtensionValue(Config.certificatePermissionOID);
+            enumSet.addAll(Arrays.asList(ObjectSerialization.decode(MachineAction[].class, ByteBuffer.wrap(bytes, 2, bytes.length - 2))));
+            this.allowedActions = enumSet;
+        }
+        return EnumSet.copyOf(enumSet);// callers may modify the set
     }
 
     /**
@@ -0,0 +1,230 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.util.ByteQueue;
+import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.SerialExecutor;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link Transport} over a non-blocking {@link SocketChannel} served by an {@link EventLoop}.
+ * <p>
+ * Received {@link MachineAction}s are run in order on the shared
+ * {@link EventLoop#getWorkers()} so the loop thread is never blocked.
+ *
+ * @author nija123098
+ */
+class ChannelTransport implements Transport {
+    /**
+     * The minimum number of bytes to attempt to read at once.
+     */
+    private static final int READ_SIZE = 16 * 1024;
+
+    /**
+     * The {@link SocketChannel} this wraps.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The remote address of the {@code channel}, cached since it is not available after closing.
+     */
+    private final String remoteName;
+
+    /**
+     * The {@link EventLoop} serving this transport.
+     */
+    private final EventLoop loop;
+
+    /**
+     * The maximum number of frames to hand to a single gathering write.
+     */
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * The frames taken from the write queue and being written, only accessed on the loop thread.
+     */
+    private final Deque<PendingWrite> inFlight = new ArrayDeque<>();
+
+    /**
+     * The array reused to gather frames and chunk headers for writing, only accessed on the loop thread.
+     */
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER * 2];
+
+    /**
+     * The {@link Executor} received {@link MachineAction}s are run on.
+     */
+    private final Executor actionExecutor = new SerialExecutor(EventLoop.getWorkers());
+
+    /**
+     * The {@link TransferSocket} to deliver received bytes to.
+     */
+    private TransferSocket transferSocket;
+
+    /**
+     * The key of the {@code channel} registration, only accessed on the loop thread.
+     */
+    private SelectionKey key;
+
+    /**
+     * Constructs a transport for a connected {@link SocketChannel}.
+     *
+     * @param channel the connected {@link SocketChannel}.
+     * @throws IOException if the channel can not be made non-blocking.
+     */
+    ChannelTransport(SocketChannel channel) throws IOException {
+        this(channel, String.valueOf(channel.getRemoteAddress()));
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);// writes are already coalesced
+    }
+
+    /**
+     * Constructs a transport for a connected {@link SocketChannel} of any protocol family,
+     * such as one over a Unix domain socket which has no meaningful remote address.
+     *
+     * @param channel    the connected {@link SocketChannel}.
+     * @param remoteName the human readable name of the other side.
+     * @throws IOException if the channel can not be made non-blocking.
+     */
+    ChannelTransport(SocketChannel channel, String remoteName) throws IOException {
+        this.channel = channel;
+        this.remoteName = remoteName;
+        this.channel.configureBlocking(false);
+        this.loop = EventLoop.next();
+    }
+
+    @Override
+    public void start(TransferSocket transferSocket) {
+        this.transferSocket = transferSocket;
+        this.loop.register(this);
+    }
+
+    @Override
+    public void scheduleWrite() {
+        this.loop.execute(() -> {
+            if (this.key != null && this.key.isValid())
+                this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+        });
+    }
+
+    @Override
+    public Executor getActionExecutor() {
+        return this.actionExecutor;
+    }
+
+    @Override
+    public String getRemoteName() {
+        return this.remoteName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();// cancels the key
+        this.loop.execute(() -> {
+            this.inFlight.forEach(pending -> pending.fail(new ClosedChannelException()));
+            this.inFlight.clear();
+        });
+    }
+
+    /**
+     * Gets the wrapped {@link SocketChannel}.
+     *
+     * @return the wrapped {@link SocketChannel}.
+     */
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Sets the key of the channel registration.
+     *
+     * @param key the key of the channel registration.
+     */
+    void setKey(SelectionKey key) {
+        this.key = key;
+        if (!this.transferSocket.getWriteQueue().isEmpty()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Reads what is available from the channel, called on the loop thread.
+     */
+    void onReadable() {
+        int readSize;
+        ByteQueue buffer = this.transferSocket.getReceiveBuffer();
+        try {
+            readSize = this.channel.read(buffer.getWritableBuffer(READ_SIZE));
+        } catch (IOException e) {
+            Log.INFO.log("Opposite side closed " + this.remoteName);
+            this.onFailure();
+            return;
+        }
+        if (readSize == -1) {
+            this.onFailure();
+            return;
+        }
+        buffer.written(readSize);
+        this.transferSocket.receive();
+    }
+
+    /**
+     * Writes as many pending frames as the channel accepts, called on the loop thread.
+     * <p>
+     * Frames are handed to the channel together in a single gathering write,
+     * which stops after a {@link Lane#BULK} chunk so frames queued on the
+     * {@link Lane#INTERACTIVE} lane meanwhile are not held behind several chunks.
+     */
+    void onWritable() {
+        WriteQueue writeQueue = this.transferSocket.getWriteQueue();
+        PendingWrite write;
+        try {
+            while (true) {
+                while (this.inFlight.size() < MAX_GATHER && (this.inFlight.isEmpty() || !this.inFlight.peekLast().isChunk()) && (write = writeQueue.poll()) != null)
+                    this.inFlight.add(write);
+                if (this.inFlight.isEmpty()) break;
+                int count = 0;
+                for (PendingWrite pending : this.inFlight) {
+                    if (pending.getHeader() != null) this.gather[count++] = pending.getHeader();
+                    this.gather[count++] = pending.getFrame();
+                }
+                this.channel.write(this.gather, 0, count);
+                Arrays.fill(this.gather, 0, count, null);
+                if (this.inFlight.peekLast().isRegionNext()) this.inFlight.peekLast().writeRegion(this.channel);// only a chunk may have a region, which ends the gather
+                while ((write = this.inFlight.peek()) != null && write.isWritten()) {
+                    this.inFlight.poll();
+                    write.complete();
+                }
+                if (!this.inFlight.isEmpty()) return;// wait to be writable again
+            }
+        } catch (IOException e) {
+            Log.WARN.log("IOException writing to " + this.remoteName, e);
+            this.inFlight.forEach(pending -> pending.fail(e));
+            this.inFlight.clear();
+            this.onFailure();
+            return;
+        }
+        this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (!writeQueue.isEmpty()) this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);// raced a write
+    }
+
+    /**
+     * Closes the {@link TransferSocket} off the loop thread due to a failed connection.
+     */
+    void onFailure() {
+        if (this.key != null) this.key.cancel();
+        this.actionExecutor.execute(() -> {
+            if (this.transferSocket != null) this.transferSocket.close();
+            else try {
+                this.close();
+            } catch (IOException e) {
+                Log.WARN.log("IOException closing channel to " + this.remoteName, e);
+            }
+        });
+    }
+}
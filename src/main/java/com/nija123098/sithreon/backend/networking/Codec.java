@@ -0,0 +1,44 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.util.StringTable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes objects of a type directly to and from {@link ByteBuffer}s.
+ * <p>
+ * The encoding is not necessarily self delimiting, a value is decoded
+ * from all the remaining bytes of the buffer it is given, so containers
+ * must bound each value they hold, as {@link MachineAction} frames do.
+ *
+ * @param <E> the type encoded and decoded.
+ * @author nija123098
+ * @see ObjectSerialization#getCodec(Class)
+ */
+public interface Codec<E> {
+    /**
+     * Gets the number of bytes the value takes when encoded.
+     *
+     * @param value the value.
+     * @return the number of bytes the value takes.
+     */
+    int size(E value);
+
+    /**
+     * Encodes the value, putting at most {@link Codec#size(Object)} bytes to the buffer.
+     * <p>
+     * Less may be put when strings repeat within a {@link StringTable}.
+     *
+     * @param value the value to encode.
+     * @param out   the buffer to put to.
+     */
+    void encode(E value, ByteBuffer out);
+
+    /**
+     * Decodes a value from the remaining bytes of the buffer.
+     *
+     * @param in the buffer to get from.
+     * @return the decoded value.
+     */
+    E decode(ByteBuffer in);
+}
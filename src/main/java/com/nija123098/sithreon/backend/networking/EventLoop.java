@@ -0,0 +1,138 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.ThreadMaker;
+import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Selector} thread which serves the {@link ChannelTransport}s registered to it.
+ * <p>
+ * A fixed group of {@link Config#eventLoopThreads} instances serves every
+ * non-blocking connection of the program.
+ *
+ * @author nija123098
+ */
+class EventLoop {
+    /**
+     * The group of loops, initialized on first use.
+     */
+    private static EventLoop[] group;
+
+    /**
+     * The index of the next loop to assign a connection to.
+     */
+    private static final AtomicInteger NEXT = new AtomicInteger();
+
+    /**
+     * The threads received {@link MachineAction}s of non-blocking connections are run on.
+     */
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(r -> ThreadMaker.getThread(ThreadMaker.NETWORK, "Transfer Socket Worker", true, r));
+
+    /**
+     * Gets the next loop of the group to assign a connection to.
+     *
+     * @return the next loop of the group.
+     */
+    static EventLoop next() {
+        synchronized (NEXT) {
+            if (group == null) {
+                group = new EventLoop[Math.max(1, Config.eventLoopThreads)];
+                for (int i = 0; i < group.length; i++) group[i] = new EventLoop(i);
+            }
+        }
+        return group[Math.abs(NEXT.getAndIncrement() % group.length)];
+    }
+
+    /**
+     * Gets the shared threads received {@link MachineAction}s are run on.
+     *
+     * @return the shared threads received {@link MachineAction}s are run on.
+     */
+    static ExecutorService getWorkers() {
+        return WORKERS;
+    }
+
+    /**
+     * The {@link Selector} for this loop's connections.
+     */
+    private final Selector selector;
+
+    /**
+     * Tasks to run on the loop thread at the next wake up.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private EventLoop(int number) {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            Log.ERROR.log("Unable to open selector", e);
+            throw new NoReturnException();
+        }
+        ThreadMaker.getPlatformThread(ThreadMaker.NETWORK, "Event Loop Thread " + number, true, this::run).start();// selecting would hold a virtual thread's carrier
+    }
+
+    /**
+     * Runs the task on the loop thread.
+     *
+     * @param task the task to run.
+     */
+    void execute(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Registers the transport's channel for reading with this loop.
+     *
+     * @param transport the transport to register.
+     */
+    void register(ChannelTransport transport) {
+        this.execute(() -> {
+            try {
+                transport.setKey(transport.getChannel().register(this.selector, SelectionKey.OP_READ, transport));
+            } catch (IOException e) {
+                Log.WARN.log("Unable to register channel to " + transport.getRemoteName(), e);
+                transport.onFailure();
+            }
+        });
+    }
+
+    /**
+     * The selection loop.
+     */
+    private void run() {
+        Runnable task;
+        while (true) {
+            try {
+                this.selector.select();
+                while ((task = this.tasks.poll()) != null) task.run();
+                for (SelectionKey key : this.selector.selectedKeys()) {
+                    ChannelTransport transport = (ChannelTransport) key.attachment();
+                    try {
+                        if (key.isReadable()) transport.onReadable();
+                        if (key.isValid() && key.isWritable()) transport.onWritable();
+                    } catch (CancelledKeyException e) {
+                        Log.TRACE.log("Key cancelled for " + transport.getRemoteName());
+                    }
+                }
+                this.selector.selectedKeys().clear();
+            } catch (IOException e) {
+                Log.WARN.log("IOException selecting channels", e);
+            } catch (Exception e) {
+                Log.WARN.log("Unexpected exception in event loop, continuing", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.ThreadMaker;
+import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the RSA operations of a {@link TransferSocket}'s authentication on a bounded pool
+ * of threads, each with it's own {@link Cipher} since a {@link Cipher} is not thread safe.
+ * <p>
+ * The connection waits for the result so it's frames are still handled in order,
+ * but only {@link Config#handshakeThreads} operations run at once however many
+ * connections are authenticating, so a storm of reconnects is admitted at the
+ * rate the pool completes them rather than every connection contending at once.
+ *
+ * @author nija123098
+ */
+class HandshakeCrypto {
+    /**
+     * The transformation of the ciphers.
+     */
+    private static final String TRANSFORMATION = "RSA/ECB/PKCS1Padding";
+
+    /**
+     * The cipher of each thread of the pool.
+     */
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            Log.ERROR.log("Invalid security settings", e);
+            throw new NoReturnException();
+        }
+    });
+
+    /**
+     * The threads running the operations.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Config.handshakeThreads, r -> ThreadMaker.getThread(ThreadMaker.NETWORK, "Handshake Crypto", true, r));
+
+    /**
+     * Decrypts bytes encrypted with this machine's public key, waiting for the pool.
+     *
+     * @param bytes the encrypted bytes.
+     * @return the decrypted bytes.
+     * @throws GeneralSecurityException if the bytes can not be decrypted.
+     */
+    static byte[] decrypt(byte[] bytes) throws GeneralSecurityException {
+        return run(Cipher.DECRYPT_MODE, Config.privateKey, bytes);
+    }
+
+    /**
+     * Encrypts bytes with another machine's public key, waiting for the pool.
+     *
+     * @param key   the other machine's public key.
+     * @param bytes the bytes to encrypt.
+     * @return the encrypted bytes.
+     * @throws GeneralSecurityException if the key is invalid or the bytes can not be encrypted.
+     */
+    static byte[] encrypt(PublicKey key, byte[] bytes) throws GeneralSecurityException {
+        return run(Cipher.ENCRYPT_MODE, key, bytes);
+    }
+
+    /**
+     * Runs an operation on the pool with the thread's cipher and waits for it's result.
+     *
+     * @param mode  the {@link Cipher} mode.
+     * @param key   the key for the mode.
+     * @param bytes the input bytes.
+     * @return the output bytes.
+     * @throws GeneralSecurityException if the operation fails.
+     */
+    private static byte[] run(int mode, Key key, byte[] bytes) throws GeneralSecurityException {
+        Future<byte[]> future = EXECUTOR.submit(() -> {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(mode, key);
+            return cipher.doFinal(bytes);
+        });
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralSecurityException) throw (GeneralSecurityException) e.getCause();
+            throw new GeneralSecurityException("Handshake cryptography failed", e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new GeneralSecurityException("Interrupted waiting for handshake cryptography", e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.nija123098.sithreon.backend.networking;
+
+/**
+ * The priority lane a {@link MachineAction} is written on within a connection.
+ * <p>
+ * Each lane keeps the order of it's own frames, but a frame queued on the
+ * {@link Lane#INTERACTIVE} lane is written before the rest of a frame on the
+ * {@link Lane#BULK} lane, which is split into chunks of {@link com.nija123098.sithreon.backend.Config#transferChunkSize}
+ * bytes so time critical frames wait for at most one chunk.
+ *
+ * @author nija123098
+ */
+public enum Lane {
+    /**
+     * The lane for small, time critical frames, such as game traffic.
+     */
+    INTERACTIVE,
+    /**
+     * The lane for large frames which may be interrupted, such as file transfers.
+     */
+    BULK,
+}
@@ -0,0 +1,304 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.util.ByteQueue;
+import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.ThreadMaker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Transport} to a {@link SocketAcceptor} in the same program instance,
+ * handing bytes between the {@link TransferSocket}s through bounded queues.
+ * <p>
+ * This lets several {@link com.nija123098.sithreon.backend.Machine}s run in one program
+ * without real sockets when {@link Config#loopbackTransport} is enabled, acceptors
+ * listening on their port number and connections being made to that number.
+ *
+ * @author nija123098
+ */
+class LoopbackTransport implements Transport {
+    /**
+     * The size of the batch queued frames are coalesced in before being handed to the other side.
+     */
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The maximum number of connections waiting to be accepted by a {@link Server}.
+     */
+    private static final int BACKLOG = 64;
+
+    /**
+     * The milliseconds to wait for room in the other side's queue between checking if it closed.
+     */
+    private static final long OFFER_WAIT = 100;
+
+    /**
+     * The batch marking that the other side closed.
+     */
+    private static final byte[] END = new byte[0];
+
+    /**
+     * The servers listening by port.
+     */
+    private static final Map<Integer, Server> SERVERS = new ConcurrentHashMap<>();
+
+    /**
+     * The source of ids for naming accepted connections.
+     */
+    private static final AtomicInteger CONNECTION_IDS = new AtomicInteger();
+
+    /**
+     * The threads queued frames are handed to the other side on.
+     */
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> ThreadMaker.getThread(ThreadMaker.NETWORK, "Loopback Transport Write Thread", true, r));
+
+    /**
+     * The batches of bytes received from the other side, bounded by {@link Config#loopbackQueueCapacity}.
+     */
+    private final BlockingQueue<byte[]> inbound = new ArrayBlockingQueue<>(Config.loopbackQueueCapacity);
+
+    /**
+     * The human readable name of the other side.
+     */
+    private final String remoteName;
+
+    /**
+     * If a writer is draining the write queue, so only one writes at a time.
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * If this side is closed.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * The other side of the connection.
+     */
+    private LoopbackTransport peer;
+
+    /**
+     * The {@link TransferSocket} to take queued frames from.
+     */
+    private volatile TransferSocket transferSocket;
+
+    private LoopbackTransport(String remoteName) {
+        this.remoteName = remoteName;
+    }
+
+    /**
+     * Listens for connections on a port in this program instance.
+     *
+     * @param port the port to listen on.
+     * @return the listening server.
+     * @throws BindException if a server is already listening on the port.
+     */
+    static Server listen(Integer port) throws BindException {
+        Server server = new Server(port);
+        if (SERVERS.putIfAbsent(port, server) != null) throw new BindException("Loopback port " + port + " already in use");
+        return server;
+    }
+
+    /**
+     * Connects to the server listening on a port in this program instance.
+     *
+     * @param port the port of the server.
+     * @return the connecting side's transport.
+     * @throws ConnectException if no server is listening on the port or it's backlog is full.
+     */
+    static LoopbackTransport connect(Integer port) throws ConnectException {
+        Server server = SERVERS.get(port);
+        LoopbackTransport connecting = new LoopbackTransport("loopback:" + port);
+        LoopbackTransport accepted = new LoopbackTransport("loopback:" + port + "#" + CONNECTION_IDS.incrementAndGet());
+        connecting.peer = accepted;
+        accepted.peer = connecting;
+        if (server == null || !server.backlog.offer(accepted)) throw new ConnectException("Connection refused to loopback port " + port);
+        return connecting;
+    }
+
+    @Override
+    public void start(TransferSocket transferSocket) {
+        this.transferSocket = transferSocket;
+        if (!transferSocket.getWriteQueue().isEmpty()) this.scheduleWrite();
+        ThreadMaker.getThread(ThreadMaker.NETWORK, "Loopback Transport Read Thread " + this.remoteName, true, () -> {
+            ByteQueue buffer = transferSocket.getReceiveBuffer();
+            byte[] bytes;
+            while (!transferSocket.isClosed()) {
+                try {
+                    bytes = this.inbound.poll(OFFER_WAIT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Log.WARN.log("Unexpected interrupt of loopback read thread for " + this.remoteName, e);
+                    transferSocket.close();
+                    return;
+                }
+                if (bytes == null) {
+                    if (!this.peer.closed.get() || !this.inbound.isEmpty()) continue;
+                    bytes = END;// the other side closed while this side's queue was full
+                }
+                if (bytes == END) {
+                    if (!this.closed.get()) Log.INFO.log("Opposite side closed " + this.remoteName);
+                    transferSocket.close();
+                    return;
+                }
+                buffer.ensureWritable(bytes.length);
+                System.arraycopy(bytes, 0, buffer.getArray(), buffer.getWriteIndex(), bytes.length);
+                buffer.written(bytes.length);
+                transferSocket.receive();
+            }
+        }).start();
+    }
+
+    @Override
+    public void scheduleWrite() {
+        if (this.transferSocket != null && this.draining.compareAndSet(false, true)) WRITERS.execute(this::drain);
+    }
+
+    /**
+     * Hands queued frames to the other side in batches until the write queue is empty.
+     */
+    private void drain() {
+        WriteQueue writeQueue = this.transferSocket.getWriteQueue();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(WRITE_BUFFER_SIZE);
+        List<PendingWrite> written = new ArrayList<>();
+        PendingWrite write;
+        try {
+            do {
+                while ((write = writeQueue.poll()) != null) {
+                    ByteBuffer header = write.getHeader();
+                    if (header != null) {
+                        batch.write(header.array(), header.arrayOffset() + header.position(), header.remaining());
+                        header.position(header.limit());
+                    }
+                    ByteBuffer frame = write.getFrame();
+                    batch.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+                    frame.position(frame.limit());
+                    if (write.isRegionNext()) write.writeRegion(batch);
+                    written.add(write);
+                    if (batch.size() >= WRITE_BUFFER_SIZE) this.handOver(batch, written);
+                }
+                this.handOver(batch, written);
+                this.draining.set(false);
+            } while (!writeQueue.isEmpty() && this.draining.compareAndSet(false, true));// raced a write
+        } catch (IOException e) {
+            written.forEach(pending -> pending.fail(e));
+            this.draining.set(false);
+            if (!this.transferSocket.isClosed()) {
+                Log.WARN.log("IOException writing to " + this.remoteName, e);
+                this.transferSocket.close();
+            }
+        }
+    }
+
+    /**
+     * Hands a batch to the other side, waiting for room in it's queue, then completes the frames in it.
+     *
+     * @param batch   the batch of bytes, which is reset.
+     * @param written the frames in the batch, which is cleared.
+     * @throws IOException if either side closes before the batch is handed over.
+     */
+    private void handOver(ByteArrayOutputStream batch, List<PendingWrite> written) throws IOException {
+        if (batch.size() == 0) return;
+        byte[] bytes = batch.toByteArray();
+        try {
+            while (!this.peer.inbound.offer(bytes, OFFER_WAIT, TimeUnit.MILLISECONDS)) {
+                if (this.closed.get() || this.peer.closed.get()) throw new ClosedChannelException();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted handing frames to " + this.remoteName, e);
+        }
+        batch.reset();
+        written.forEach(PendingWrite::complete);
+        written.clear();
+    }
+
+    @Override
+    public Executor getActionExecutor() {
+        return null;// actions run on the read thread
+    }
+
+    @Override
+    public String getRemoteName() {
+        return this.remoteName;
+    }
+
+    @Override
+    public void close() {
+        if (this.closed.getAndSet(true)) return;
+        this.inbound.clear();
+        this.inbound.offer(END);// wakes this side's read thread
+        this.peer.inbound.offer(END);// if the queue is full the other side sees this is closed once it empties
+    }
+
+    /**
+     * Accepts {@link LoopbackTransport}s connecting to a port.
+     */
+    static class Server {
+        /**
+         * The transport which wakes the accepting thread on close.
+         */
+        private static final LoopbackTransport CLOSED = new LoopbackTransport("closed");
+
+        /**
+         * The port listened on.
+         */
+        private final Integer port;
+
+        /**
+         * The accepted sides of connections waiting to be accepted.
+         */
+        private final BlockingQueue<LoopbackTransport> backlog = new ArrayBlockingQueue<>(BACKLOG);
+
+        private Server(Integer port) {
+            this.port = port;
+        }
+
+        /**
+         * Waits for the next connection.
+         *
+         * @return the accepted side's transport.
+         * @throws IOException if this server is closed.
+         */
+        LoopbackTransport accept() throws IOException {
+            try {
+                LoopbackTransport transport = this.backlog.take();
+                if (transport == CLOSED) {
+                    this.backlog.offer(CLOSED);// for any other accepting thread
+                    throw new ClosedChannelException();
+                }
+                return transport;
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted accepting on loopback port " + this.port, e);
+            }
+        }
+
+        /**
+         * Stops listening, refusing connections waiting to be accepted.
+         */
+        void close() {
+            SERVERS.remove(this.port, this);
+            LoopbackTransport transport;
+            while ((transport = this.backlog.poll()) != null) {
+                if (transport != CLOSED) transport.close();// CLOSED has no other side, it is left by an earlier close
+            }
+            this.backlog.offer(CLOSED);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.nija123098.sithreon.backend.networking;
 
+import com.nija123098.sithreon.backend.Config;
 import com.nija123098.sithreon.backend.Machine;
 import com.nija123098.sithreon.backend.command.Command;
 import com.nija123098.sithreon.backend.command.commands.GameClientCommand;
@@ -9,14 +10,16 @@ import com.nija123098.sithreon.backend.machines.GameServer;
 import com.nija123098.sithreon.backend.machines.SuperServer;
 import com.nija123098.sithreon.backend.objects.Match;
 import com.nija123098.sithreon.backend.objects.Repository;
-import com.nija123098.sithreon.backend.util.ByteHandler;
+import com.nija123098.sithreon.backend.util.BinaryUtil;
 import com.nija123098.sithreon.backend.util.Log;
 import com.nija123098.sithreon.game.management.GameAction;
 import com.nija123098.sithreon.game.management.GameUpdate;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
-import java.util.concurrent.atomic.AtomicReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.stream.Stream;
 
 /**
@@ -24,13 +27,15 @@ import java.util.stream.Stream;
  * invocation for transmitting {@link Command}s
  * other actions between machines between machines.
  * <p>
- * Machine actions are completed by invoking a {@link Method}.
+ * Machine actions are completed by invoking a {@link Method}
+ * through a {@link MethodHandle} bound when this class is initialized.
  *
  * @author nija123098
  */
 public enum MachineAction {
     /**
-     * Affirms a policy of no authentication between machine connections.
+     * Affirms a policy of no authentication between machine connections,
+     * advertising if the sender accepts compressed frames.
      */
     AFFIRM_NO_AUTHENTICATION(TransferSocket.class, false),
     /**
@@ -48,7 +53,7 @@ public enum MachineAction {
     /**
      * Identifies this machine as the holder of the {@link java.security.PrivateKey} of the sent certificate.
      * <p>
-     * This is later authenticated.
+     * This is later authenticated, it also advertises if the sender accepts compressed frames.
      */
     IDENTIFY_SELF(TransferSocket.class, false),
     /**
@@ -80,17 +85,17 @@ public enum MachineAction {
      */
     READY_TO_RECEIVE_COMPETITOR_DATA(GameServer.class, true),
     /**
-     * Indicates that the {@link GameClient} is ready to receive the files for it's client.
+     * Sends a piece of the contents of a file for the {@link GameClient}'s client by hash, at an offset within the contents.
      */
-    SEND_COMPETITOR_DATA(GameClient.class, true),
+    SEND_COMPETITOR_DATA(GameClient.class, true, Lane.BULK),
     /**
-     * Indicates that the {@link GameClient} is ready to receive the next file from the {@link GameServer}.
+     * Grants the {@link GameServer} credit to send more pieces of files to the {@link GameClient}.
      */
     READY_FOR_NEXT_FILE(GameServer.class, true),
     /**
      * Indicates that the {@link GameClient} is ready to receive the files for it's client.
      */
-    COMPETITOR_DATA_COMPLETE(GameClient.class, true),
+    COMPETITOR_DATA_COMPLETE(GameClient.class, true, Lane.BULK),
     /**
      * The action to start a game specified by a {@link Match}.
      */
@@ -98,7 +103,7 @@ public enum MachineAction {
     /**
      * The action to indicate that one of a requested game's {@link Repository} is out of date.
      */
-    MATCH_OUT_OF_DATE(SuperServer.class, true),
+    MATCH_OUT_OF_DATE(GameServer.class, true),
     /**
      * The action to respond with a result from a {@link Match}.
      */
@@ -111,6 +116,46 @@ public enum MachineAction {
      * The action for a {@link GameServer} to tell the {@link GameClient} of a {@link GameUpdate}.
      */
     GAME_UPDATE(GameClient.class, true),
+    /**
+     * Sends the {@link GameClient} the paths and content hashes of it's client's files.
+     */
+    COMPETITOR_MANIFEST(GameClient.class, true, Lane.BULK),
+    /**
+     * Requests the contents of the files the {@link GameClient} does not have by hash.
+     */
+    REQUEST_COMPETITOR_BLOBS(GameServer.class, true),
+    /**
+     * Presents a ticket from an earlier authentication to resume it's session instead of authenticating fully.
+     */
+    RESUME_SESSION(TransferSocket.class, false),
+    /**
+     * Proves the accepting side holds the secret of the session being resumed, or rejects the resumption.
+     */
+    RESUMPTION_CHALLENGE(TransferSocket.class, false),
+    /**
+     * Proves the connecting side holds the secret of the session being resumed.
+     */
+    RESUMPTION_PROOF(TransferSocket.class, false),
+    /**
+     * Issues a ticket for resuming the session after a full authentication.
+     */
+    SESSION_TICKET(TransferSocket.class, false),
+    /**
+     * Requests a certificate and it's ancestors, so an unknown chain is fetched in one round trip.
+     */
+    REQUEST_CERTIFICATE_CHAIN(TransferSocket.class, false),
+    /**
+     * Sends a certificate and it's ancestors to another {@link Machine}.
+     */
+    SEND_CERTIFICATE_CHAIN(TransferSocket.class, false),
+    /**
+     * Carries the sender's clock to be returned by {@link MachineAction#HEARTBEAT_ECHO}, measuring the round trip time.
+     */
+    HEARTBEAT(TransferSocket.class, false),
+    /**
+     * Returns the clock of a {@link MachineAction#HEARTBEAT} to it's sender.
+     */
+    HEARTBEAT_ECHO(TransferSocket.class, false),
     ;
 
     /**
@@ -118,6 +163,11 @@ public enum MachineAction {
      */
     private final boolean requiresVerification;
 
+    /**
+     * The lane this action is written on.
+     */
+    private final Lane lane;
+
     /**
      * The location to find the action's method.
      */
@@ -126,18 +176,37 @@ public enum MachineAction {
     /**
      * The method to be invoked to complete the action.
      */
-    private final AtomicReference<Method> method = new AtomicReference<>();
+    private Method method;
+
+    /**
+     * The handle invoking the {@code method} with a receiver and spread argument array, bound at class initialization.
+     */
+    private MethodHandle invoker;
+
+    /**
+     * The method argument types.
+     */
+    private Class<Object>[] argumentTypes;
 
     /**
-     * The cached argument method argument types.
+     * The {@link Codec} for each argument slot, null for {@link TransferSocket} slots.
      */
-    private final AtomicReference<Class<Object>[]> argumentTypes = new AtomicReference<>();
+    private Codec<Object>[] codecs;
+
+    /**
+     * The number of arguments a caller provides, which excludes {@link TransferSocket} slots.
+     */
+    private int callerArguments;
 
     /**
      * The cached value if this action is to be invoked on {@link Machine}s.
      */
     private final boolean machineAction;
 
+    static {// every constant must exist before annotations referencing them can be read
+        for (MachineAction action : values()) action.bind();
+    }
+
     /**
      * Constructs an instance using a {@link Class} instance
      * as an indication to where the method is located.
@@ -146,97 +215,114 @@ public enum MachineAction {
      *                      for this action is contained in.
      */
     MachineAction(Class<?> classLocation, boolean requiresVerification) {
+        this(classLocation, requiresVerification, Lane.INTERACTIVE);
+    }
+
+    /**
+     * Constructs an instance using a {@link Class} instance
+     * as an indication to where the method is located.
+     *
+     * @param classLocation the {@link Class} type which the method
+     *                      for this action is contained in.
+     * @param lane          the lane to write this action on.
+     */
+    MachineAction(Class<?> classLocation, boolean requiresVerification, Lane lane) {
+        this.lane = lane;
         this.requiresVerification = requiresVerification;
         this.classLocation = classLocation;
         this.machineAction = Machine.class.isAssignableFrom(classLocation);
     }
 
     /**
-     * Serializes the instance's ordinal and arguments
-     * which the receiving machine will deserialize
-     * to invoke on the appropriate method.
+     * Gets the number of bytes the instance's ordinal
+     * and arguments take when written.
+     * <p>
+     * Arguments are only validated if {@link Config#validateMachineActions} is enabled.
      *
      * @param args the object arguments for the connected machine
      *             to use as arguments for method invocation.
-     * @return the bytes to transfer indicating a that the receiving machine
-     * should invoke the indicated method with the specified arguments.
-     */
-    public byte[] write(Object... args) {
-        this.ensureMethodLoad();
-        if (this.argumentTypes.get().length != args.length) {
-            boolean pass = false;
-            for (Class<?> clazz : this.argumentTypes.get()) {
-                if (TransferSocket.class.equals(clazz)) {
-                    if (this.argumentTypes.get().length - 1 != args.length)
-                        Log.ERROR.log("Invalid argument length for MachineAction " + this);
-                    else {
-                        pass = true;
-                        break;
-                    }
-                }
-            }
-            if (!pass) Log.ERROR.log("Invalid argument length for MachineAction " + this);
+     * @return the maximum number of bytes {@link MachineAction#write(ByteBuffer, Object...)} puts.
+     */
+    public int size(Object... args) {
+        if (Config.validateMachineActions) this.validate(args);
+        int size = 1;
+        for (int i = 0, arg = 0; i < this.codecs.length; i++) {
+            if (this.codecs[i] != null) size += Integer.BYTES + this.codecs[i].size(args[arg++]);
         }
-        for (int i = 0; i < args.length; i++)
-            if (args[i] == null)
-                Log.ERROR.log("Argument found null in write for " + this.name() + " at " + i + " while expecting " + this.argumentTypes.get()[i].getName());
-        for (int i = 0; i < this.argumentTypes.get().length; i++) {
-            if (!TransferSocket.class.equals(this.argumentTypes.get()[i]) && !this.argumentTypes.get()[i].isInstance(args[i]))
-                Log.ERROR.log("Invalid argument given for MachineAction " + this + " at " + i + " expected " + this.argumentTypes.get()[i].getSimpleName() + " got " + args[i].getClass().getSimpleName() + " args: " + Stream.of(args).map(Object::toString).reduce((s, s2) -> s + ", " + s2).orElse("No Args"));
+        return size;
+    }
+
+    /**
+     * Encodes the instance's ordinal and arguments
+     * which the receiving machine will decode
+     * to invoke on the appropriate method.
+     * <p>
+     * Each argument is preceded by it's length.
+     *
+     * @param out  the buffer to put to, which must have {@link MachineAction#size(Object...)} bytes remaining,
+     *             less may be put.
+     * @param args the object arguments for the connected machine
+     *             to use as arguments for method invocation.
+     */
+    public void write(ByteBuffer out, Object... args) {
+        out.put((byte) this.ordinal());
+        int lengthIndex;
+        for (int i = 0, arg = 0; i < this.codecs.length; i++) {
+            if (this.codecs[i] == null) continue;
+            lengthIndex = out.position();
+            out.position(lengthIndex + Integer.BYTES);
+            this.codecs[i].encode(args[arg++], out);
+            out.putInt(lengthIndex, out.position() - lengthIndex - Integer.BYTES);
         }
-        if (this.argumentTypes.get().length == 0) return new byte[]{(byte) this.ordinal()};
-        ByteHandler bytes = new ByteHandler();
-        bytes.add((byte) this.ordinal());
-        byte[] serialized;
-        for (int i = 0; i < this.argumentTypes.get().length; i++) {
-            if (TransferSocket.class.equals(this.argumentTypes.get()[i])) continue;
-            serialized = ObjectSerialization.serialize(this.argumentTypes.get()[i], args[i]);
-            bytes.add(ObjectSerialization.serialize(Integer.class, serialized.length));
-            bytes.add(serialized);
+    }
+
+    /**
+     * Validates the arguments to write, closing the program if they are not appropriate.
+     *
+     * @param args the object arguments to validate.
+     */
+    private void validate(Object... args) {
+        if (this.callerArguments != args.length)
+            Log.ERROR.log("Invalid argument length for MachineAction " + this);
+        for (int i = 0, arg = 0; i < this.argumentTypes.length; i++) {
+            if (this.codecs[i] == null) continue;
+            if (args[arg] == null)
+                Log.ERROR.log("Argument found null in write for " + this.name() + " at " + arg + " while expecting " + this.argumentTypes[i].getName());
+            if (!this.argumentTypes[i].isInstance(args[arg]))
+                Log.ERROR.log("Invalid argument given for MachineAction " + this + " at " + arg + " expected " + this.argumentTypes[i].getSimpleName() + " got " + args[arg].getClass().getSimpleName() + " args: " + Stream.of(args).map(Object::toString).reduce((s, s2) -> s + ", " + s2).orElse("No Args"));
+            ++arg;
         }
-        return bytes.getBytes(false, bytes.size());
     }
 
     /**
-     * Deserializes the bytes sent to this {@link Machine}
+     * Deserializes the bytes of a frame sent to this {@link Machine}
      * for invocation of the appropriate method.
      * <p>
-     * The {@link ByteHandler} will have the appropriate number of bytes
-     * removed from it in the case that objects are found for deserialization.
+     * The frame is read from it's position, which must be the
+     * action's ordinal byte, and is consumed by reading.
      *
-     * @param bytes the byte buffer to draw bytes from.
-     * @return the objects to invoke on the appropriate method or null.
-     * if the objects that should be specified are not completely within the buffer.
-     */
-    public Object[] read(TransferSocket socket, ByteHandler bytes) {
-        this.ensureMethodLoad();
-        if (this.argumentTypes.get().length == 0) {
-            bytes.remove(0);
-            return new Object[0];
-        }
-        Object[] objects = new Object[this.argumentTypes.get().length];
-        byte argument = 0;
-        int serializeLength, objectIndex = 0;
-        for (int i = 0; i < this.argumentTypes.get().length; i++)
-            if (TransferSocket.class.equals(this.argumentTypes.get()[i])) objects[i] = socket;
-        for (int i = 1; i < bytes.size(); i++) {// the first byte has already been used to determine the action
-            if (objects[objectIndex] != null) ++objectIndex;
-            if (bytes.size() < i + Integer.BYTES) return null;// instance should be used for handling the network input
-            serializeLength = ObjectSerialization.deserialize(Integer.class, bytes.getBytes(false, i, Integer.BYTES));
-            i += Integer.BYTES;
-            if (bytes.size() < i + serializeLength) return null;
-            objects[objectIndex++] = ObjectSerialization.deserialize(this.argumentTypes.get()[argument++], bytes.getBytes(false, i, serializeLength));
-            i += serializeLength - 1;
-            if (objectIndex >= this.argumentTypes.get().length || objects[objectIndex] instanceof TransferSocket) {
-                bytes.removeRange(0, i + 1);
-                return objects;
+     * @param socket the socket the frame was received from.
+     * @param frame  the bytes of a single complete frame.
+     * @return the objects to invoke on the appropriate method or null if the frame is malformed.
+     */
+    public Object[] read(TransferSocket socket, ByteBuffer frame) {
+        Object[] objects = new Object[this.codecs.length];
+        try {
+            frame.get();// the first byte has already been used to determine the action
+            ByteBuffer argument;
+            for (int i = 0; i < objects.length; i++) {
+                if (this.codecs[i] == null) {
+                    objects[i] = socket;
+                    continue;
+                }
+                argument = BinaryUtil.getSlice(frame, frame.getInt());
+                objects[i] = this.codecs[i].decode(argument);
+                if (argument.hasRemaining()) return null;
             }
+        } catch (BufferUnderflowException | NegativeArraySizeException | IllegalArgumentException e) {
+            return null;
         }
-        if (objectIndex >= this.argumentTypes.get().length || (objectIndex + 1 >= this.argumentTypes.get().length && objects[objectIndex] instanceof TransferSocket)) {
-            bytes.clear();
-            return objects;
-        }
-        return null;
+        return frame.hasRemaining() ? null : objects;
     }
 
     /**
@@ -247,32 +333,43 @@ public enum MachineAction {
      * @param args   the object arguments to invoke th specified method.
      */
     public void act(TransferSocket socket, Object... args) {
-        if (this.machineAction && socket.getLocalMachine().getClass() != this.method.get().getDeclaringClass() && !Machine.class.equals(this.method.get().getDeclaringClass())) {
+        if (this.machineAction && socket.getLocalMachine().getClass() != this.method.getDeclaringClass() && !Machine.class.equals(this.method.getDeclaringClass())) {
             Log.WARN.log("Connection " + socket.getConnectionName() + " sent " + this + " action to the wrong kind of Machine, closing connection");
             socket.close();
             return;
         }
+        Object target = this.machineAction ? socket.getLocalMachine() : socket;
         try {
-            this.method.get().invoke(this.machineAction ? socket.getLocalMachine() : socket, args);
-        } catch (IllegalAccessException e) {
-            Log.ERROR.log("Malformed MachineAction reference method " + this.classLocation.getSimpleName() + "." + this.method.get().getName(), e);
-        } catch (InvocationTargetException e) {
-            Log.WARN.log("InvocationTargetException invoking " + this.classLocation.getSimpleName() + "." + this.method.get().getName(), e);
+            this.invoker.invokeExact(target, args);
+        } catch (Throwable e) {
+            Log.WARN.log("Exception invoking " + this.classLocation.getSimpleName() + "." + this.method.getName(), e);
         }
     }
 
     /**
-     * Ensures the initialization due to requiring the
-     * instance to be initialized for this function.
+     * Finds the method for this action then resolves it's invoker and
+     * the codecs for each argument slot once.
      */
-    private void ensureMethodLoad() {
-        if (this.argumentTypes.get() != null) return;
-        this.method.set(Stream.of(this.classLocation.getMethods()).filter(m -> {
+    @SuppressWarnings("unchecked")// parameter types are only used to look up codecs and spread arguments
+    private void bind() {
+        this.method = Stream.of(this.classLocation.getMethods()).filter(m -> {
             Action a = m.getAnnotation(Action.class);
             return a != null && a.value() == this;
-        }).findFirst().orElse(null));
-        if (this.method.get() == null) Log.ERROR.log("No method found for MachineAction " + this);
-        this.argumentTypes.set((Class<Object>[]) this.method.get().getParameterTypes());
+        }).findFirst().orElse(null);
+        if (this.method == null) Log.ERROR.log("No method found for MachineAction " + this);
+        this.argumentTypes = (Class<Object>[]) this.method.getParameterTypes();
+        this.codecs = (Codec<Object>[]) new Codec<?>[this.argumentTypes.length];
+        for (int i = 0; i < this.argumentTypes.length; i++) {
+            if (TransferSocket.class.equals(this.argumentTypes[i])) continue;
+            this.codecs[i] = ObjectSerialization.getCodec(this.argumentTypes[i]);
+            ++this.callerArguments;
+        }
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(this.method);
+            this.invoker = handle.asType(handle.type().generic().changeReturnType(void.class)).asSpreader(Object[].class, this.argumentTypes.length);
+        } catch (IllegalAccessException e) {
+            Log.ERROR.log("Malformed MachineAction reference method " + this.classLocation.getSimpleName() + "." + this.method.getName(), e);
+        }
     }
 
     /**
@@ -283,4 +380,13 @@ public enum MachineAction {
     public boolean requiresAuthentication() {
         return this.requiresVerification;
     }
+
+    /**
+     * Gets the lane this action is written on.
+     *
+     * @return the lane this action is written on.
+     */
+    public Lane getLane() {
+        return this.lane;
+    }
 }
@@ -2,84 +2,145 @@ package com.nija123098.sithreon.backend.networking;
 
 import com.nija123098.sithreon.backend.Machine;
 import com.nija123098.sithreon.backend.objects.*;
-import com.nija123098.sithreon.backend.util.ByteHandler;
+import com.nija123098.sithreon.backend.util.BinaryUtil;
 import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.StringTable;
+import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
 import com.nija123098.sithreon.backend.util.throwable.SithreonException;
 import com.nija123098.sithreon.game.management.GameArguments;
 
 import java.lang.reflect.Array;
 import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * Handles the serialization of objects
  * for transfer between {@link Machine}s.
+ * <p>
+ * Objects are encoded by a {@link Codec} straight into the caller's
+ * {@link ByteBuffer}, {@link ObjectSerialization#serialize(Class, Object)}
+ * and {@link ObjectSerialization#deserialize(Class, byte[])} are
+ * conveniences for when an array is needed.
  *
  * @author nija123098
  */
 public class ObjectSerialization {
     /**
-     * Function for turning an enum to bytes, since in line ths doesn't seem to work.
+     * Map of the codecs for each type, including resolved enum and array types.
      */
-    private static final Function<Object, byte[]> ENUM_TO_BYTE = o -> new byte[]{(byte) ((Enum) o).ordinal()};
+    private static final Map<Class<?>, Codec<?>> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(Long.class, aLong -> Long.BYTES, (aLong, out) -> out.putLong(aLong), ByteBuffer::getLong);// 2's complement
+        register(Integer.class, integer -> Integer.BYTES, (integer, out) -> out.putInt(integer), ByteBuffer::getInt);
+        register(String.class, BinaryUtil::utf8Length, (s, out) -> BinaryUtil.putUtf8(out, s), in -> BinaryUtil.getUtf8(in, in.remaining()));
+        register(Repository.class, repository -> StringTable.stringSize(repository.toString()), (repository, out) -> StringTable.putString(out, repository.toString()), in -> Repository.getRepo(StringTable.getString(in)));
+        register(Boolean.class, bool -> 1, (bool, out) -> out.put(bool ? ((byte) 1) : 0), in -> in.get() == 1);
+        register(byte[].class, bytes -> bytes.length, (bytes, out) -> out.put(bytes), in -> {
+            if (in.hasArray() && in.arrayOffset() + in.position() == 0 && in.remaining() == in.array().length) {
+                in.position(in.limit());
+                return in.array();// the whole array, as from deserialize
+            }
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+            return bytes;
+        });
+        register(ByteBuffer.class, ByteBuffer::remaining, (buffer, out) -> out.put(buffer.duplicate()), in -> {
+            ByteBuffer view = in.slice();// not copied, only valid while the frame is handled
+            in.position(in.limit());
+            return view;
+        });
+        register(MatchUp.class, ObjectEncoding::sizeOf, (matchUp, out) -> ObjectEncoding.put(out, matchUp), ObjectEncoding::getMatchUp);
+        register(Match.class, ObjectEncoding::sizeOf, (match, out) -> ObjectEncoding.put(out, match), ObjectEncoding::getMatch);
+        register(Lineup.class, ObjectEncoding::sizeOf, (lineup, out) -> ObjectEncoding.put(out, lineup), ObjectEncoding::getLineup);
+        register(Team.class, ObjectEncoding::sizeOf, (team, out) -> ObjectEncoding.put(out, team), ObjectEncoding::getTeam);
+        register(TeamMember.class, ObjectEncoding::sizeOf, (member, out) -> ObjectEncoding.put(out, member), ObjectEncoding::getTeamMember);
+        register(Competitor.class, ObjectEncoding::sizeOf, (competitor, out) -> ObjectEncoding.put(out, competitor), ObjectEncoding::getCompetitor);
+        register(Certificate.class, certificate -> certificate.getBytes().length, (certificate, out) -> out.put(certificate.getBytes()), in -> Certificate.getCertificate(getCodec(byte[].class).decode(in)));
+        register(BigInteger.class, integer -> integer.bitLength() / 8 + 1, (integer, out) -> out.put(integer.toByteArray()), in -> new BigInteger(getCodec(byte[].class).decode(in)));
+        register(GameArguments.class, GameArguments::size, GameArguments::encode, GameArguments::decode);
+    }
 
     /**
-     * Map of deserialization functions.
+     * Registers methods to use for encoding and decoding based on the type of an object.
+     *
+     * @param type   the type of the objects to encode and decode.
+     * @param size   the function for the number of bytes an object takes.
+     * @param encode the function to encode an object to a buffer.
+     * @param decode the function to decode an object from the remaining bytes of a buffer.
+     * @param <E>    the type being encoded and decoded.
      */
-    private static final Map<Class<?>, Function<byte[], ?>> TO_OBJECT = new HashMap<>();
+    private static <E> void register(Class<E> type, ToIntFunction<E> size, BiConsumer<E, ByteBuffer> encode, Function<ByteBuffer, E> decode) {
+        CODECS.put(type, new FunctionCodec<>(size, encode, decode));
+    }
 
     /**
-     * Map of serialization functions.
+     * Gets the {@link Codec} for a type so it can be reused without looking it up again.
+     *
+     * @param type the type of the objects to encode and decode.
+     * @param <E>  the type of the objects to encode and decode.
+     * @return the {@link Codec} for the type.
      */
-    private static final Map<Class<?>, Function<?, byte[]>> TO_BYTES = new HashMap<>();
+    @SuppressWarnings("unchecked")// codecs are registered by the type they encode
+    public static <E> Codec<E> getCodec(Class<E> type) {
+        Codec<E> codec = (Codec<E>) CODECS.get(type);
+        if (codec != null) return codec;
+        if (type.isEnum()) {
+            E[] constants = type.getEnumConstants();
+            codec = new FunctionCodec<>(e -> 1, (e, out) -> out.put((byte) ((Enum) e).ordinal()), in -> {
+                int ordinal = in.get();
+                if (ordinal < 0 || ordinal >= constants.length) throw new IllegalArgumentException("Unknown ordinal " + ordinal + " of " + type);
+                return constants[ordinal];
+            });
+        } else if (type.isArray()) codec = (Codec<E>) new ArrayCodec<>(type.getComponentType());
+        else {
+            Log.ERROR.log("ObjectSerialization does not support type: " + type, new SithreonException("No serialization support for " + type));
+            throw new NoReturnException();
+        }
+        Codec<E> existing = (Codec<E>) CODECS.putIfAbsent(type, codec);// not computeIfAbsent, array codecs resolve their component's
+        return existing == null ? codec : existing;
+    }
 
-    static {
-        registerSerialization(Long.class, (aLong -> ByteBuffer.allocate(Long.BYTES).putLong(aLong).array()), (bytes -> ((ByteBuffer) ByteBuffer.allocate(Long.BYTES).put(bytes).flip()).asLongBuffer().get()));// 2's complement
-        registerSerialization(Integer.class, (aLong -> ByteBuffer.allocate(Integer.BYTES).putInt(aLong).array()), (bytes -> ((ByteBuffer) ByteBuffer.allocate(Integer.BYTES).put(bytes).flip()).asIntBuffer().get()));
-        registerSerialization(String.class, s -> s.getBytes(StandardCharsets.UTF_8), bytes -> new String(bytes, Charset.forName("UTF-8")));
-        registerStringSerialization(Repository.class, Repository::toString, Repository::getRepo);
-        registerSerialization(Boolean.class, bool -> new byte[]{bool ? ((byte) 1) : 0}, bytes -> bytes[0] == 1);
-        registerSerialization(byte[].class, Function.identity(), Function.identity());
-        registerStringSerialization(MatchUp.class, MatchUp::toString, MatchUp::new);
-        registerStringSerialization(Match.class, Match::toString, Match::new);
-        registerStringSerialization(Lineup.class, Lineup::toString, Lineup::new);
-        registerStringSerialization(Team.class, Team::toString, Team::new);
-        registerStringSerialization(TeamMember.class, TeamMember::toString, TeamMember::new);
-        registerStringSerialization(Competitor.class, Competitor::toString, Competitor::new);
-        registerSerialization(Certificate.class, Certificate::getBytes, Certificate::getCertificate);
-        registerSerialization(BigInteger.class, BigInteger::toByteArray, BigInteger::new);
-        registerSerialization(GameArguments.class, GameArguments::getBytes, GameArguments::new);
+    /**
+     * Gets the number of bytes the object takes when encoded.
+     *
+     * @param type   the type of the object.
+     * @param object the object.
+     * @param <E>    the type of the object.
+     * @return the number of bytes the object takes.
+     */
+    public static <E> int size(Class<E> type, E object) {
+        return getCodec(type).size(object);
     }
 
     /**
-     * Registers methods to use for serialization and deserialization based on the type of an object.
+     * Encodes the object into the buffer, which must have {@link ObjectSerialization#size(Class, Object)} bytes remaining.
      *
-     * @param type     the type of the objects to serialize and deserialize.
-     * @param toBytes  the function to for serialization.
-     * @param toObject the function for deserialization.
-     * @param <E>      the type being serialized and deserialized.
+     * @param type   the type of the object being encoded.
+     * @param object the object to encode.
+     * @param out    the buffer to put to.
+     * @param <E>    the type of the object being encoded.
      */
-    private static <E> void registerSerialization(Class<E> type, Function<E, byte[]> toBytes, Function<byte[], E> toObject) {
-        TO_OBJECT.put(type, toObject);
-        TO_BYTES.put(type, toBytes);
+    public static <E> void encode(Class<E> type, E object, ByteBuffer out) {
+        getCodec(type).encode(object, out);
     }
 
     /**
-     * Registers methods to use for serialization and deserialization based on the type of an object with a string intermediate step.
+     * Decodes an object from the remaining bytes of the buffer.
      *
-     * @param type     the type of the objects to serialize and deserialize.
-     * @param toBytes  the function to for serialization though strings.
-     * @param toObject the function for deserialization through strings.
-     * @param <E>      the type being serialized and deserialized.
+     * @param type the type of the object being decoded.
+     * @param in   the buffer to get from.
+     * @param <E>  the type of the object being decoded.
+     * @return the object represented by the bytes.
      */
-    private static <E> void registerStringSerialization(Class<E> type, Function<E, String> toBytes, Function<String, E> toObject) {
-        TO_OBJECT.put(type, bytes -> toObject.apply(deserialize(String.class, bytes)));
-        TO_BYTES.put(type, o -> serialize(String.class, toBytes.apply((E) o)));
+    public static <E> E decode(Class<E> type, ByteBuffer in) {
+        return getCodec(type).decode(in);
     }
 
     /**
@@ -91,22 +152,11 @@ public class ObjectSerialization {
      * @return the bytes representing the object.
      */
     public static <E> byte[] serialize(Class<E> type, E object) {
-        if (type.isEnum()) return new byte[]{(byte) ((Enum) object).ordinal()};
-        Function<E, byte[]> function = (Function<E, byte[]>) TO_BYTES.get(type);
-        if (type.isArray() && function == null) {
-            ByteHandler byteHandler = new ByteHandler();
-            Function<Integer, byte[]> integerFunction = (Function<Integer, byte[]>) TO_BYTES.get(Integer.class);
-            int length = Array.getLength(object);
-            byteHandler.add(integerFunction.apply(length));
-            function = (Function<E, byte[]>) (type.getComponentType().isEnum() ? ENUM_TO_BYTE : TO_BYTES.get(type.getComponentType()));
-            byte[] serialized;
-            for (int i = 0; i < length; i++) {
-                serialized = function.apply((E) Array.get(object, i));
-                byteHandler.add(integerFunction.apply(serialized.length));
-                byteHandler.add(serialized);
-            }
-            return byteHandler.getBytes();
-        } else return ((Function<E, byte[]>) TO_BYTES.get(type)).apply(object);
+        if (type == byte[].class) return (byte[]) object;// byte arrays are their own serialization
+        Codec<E> codec = getCodec(type);
+        ByteBuffer buffer = ByteBuffer.allocate(codec.size(object));
+        codec.encode(object, buffer);
+        return buffer.array();
     }
 
     /**
@@ -118,23 +168,114 @@ public class ObjectSerialization {
      * @return the object represented by the bytes.
      */
     public static <E> E deserialize(Class<E> type, byte[] bytes) {
-        if (type.isEnum()) return type.getEnumConstants()[bytes[0]];
-        Function<byte[], E> function = (Function<byte[], E>) TO_OBJECT.get(type);
-        if (type.isArray() && function == null) {
-            ByteHandler byteHandler = new ByteHandler(bytes);
-            Function<byte[], Integer> integerFunction = (Function<byte[], Integer>) TO_OBJECT.get(Integer.class);
-            int length = integerFunction.apply(byteHandler.getBytes(true, Integer.BYTES));
-            Object array = Array.newInstance(type.getComponentType(), length);
-            function = type.getComponentType().isEnum() ? b -> (E) type.getComponentType().getEnumConstants()[b[0]] : (Function<byte[], E>) TO_OBJECT.get(type.getComponentType());
+        return getCodec(type).decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * A {@link Codec} composed of functions.
+     *
+     * @param <E> the type encoded and decoded.
+     */
+    private static class FunctionCodec<E> implements Codec<E> {
+        /**
+         * The function for the number of bytes a value takes.
+         */
+        private final ToIntFunction<E> size;
+
+        /**
+         * The function encoding a value.
+         */
+        private final BiConsumer<E, ByteBuffer> encode;
+
+        /**
+         * The function decoding a value.
+         */
+        private final Function<ByteBuffer, E> decode;
+
+        private FunctionCodec(ToIntFunction<E> size, BiConsumer<E, ByteBuffer> encode, Function<ByteBuffer, E> decode) {
+            this.size = size;
+            this.encode = encode;
+            this.decode = decode;
+        }
+
+        @Override
+        public int size(E value) {
+            return this.size.applyAsInt(value);
+        }
+
+        @Override
+        public void encode(E value, ByteBuffer out) {
+            this.encode.accept(value, out);
+        }
+
+        @Override
+        public E decode(ByteBuffer in) {
+            return this.decode.apply(in);
+        }
+    }
+
+    /**
+     * The {@link Codec} for arrays, the length followed by each element's length and encoding.
+     *
+     * @param <C> the component type of the array.
+     */
+    private static class ArrayCodec<C> implements Codec<Object> {
+        /**
+         * The component type of the array.
+         */
+        private final Class<C> componentType;
+
+        /**
+         * The {@link Codec} for the array's elements.
+         */
+        private final Codec<C> componentCodec;
+
+        private ArrayCodec(Class<C> componentType) {
+            this.componentType = componentType;
+            this.componentCodec = getCodec(componentType);
+        }
+
+        @Override
+        public int size(Object value) {
+            int length = Array.getLength(value);
+            int size = Integer.BYTES * (length + 1);
+            for (int i = 0; i < length; i++) size += this.componentCodec.size(this.get(value, i));
+            return size;
+        }
+
+        @Override
+        public void encode(Object value, ByteBuffer out) {
+            int length = Array.getLength(value);
+            out.putInt(length);
+            int lengthIndex;
             for (int i = 0; i < length; i++) {
-                Array.set(array, i, function.apply(byteHandler.getBytes(true, integerFunction.apply(byteHandler.getBytes(true, Integer.BYTES)))));
+                lengthIndex = out.position();
+                out.position(lengthIndex + Integer.BYTES);
+                this.componentCodec.encode(this.get(value, i), out);
+                out.putInt(lengthIndex, out.position() - lengthIndex - Integer.BYTES);// may be less than the size
             }
-            return (E) array;
-        } else {
-            function = (Function<byte[], E>) TO_OBJECT.get(type);
-            if (function == null)
-                Log.ERROR.log("ObjectSerialization does not support type: " + type, new SithreonException("No serialization support for " + type));
-            return function.apply(bytes);
+        }
+
+        /**
+         * Gets an element of an array of the component type.
+         *
+         * @param array the array.
+         * @param index the index of the element.
+         * @return the element.
+         */
+        @SuppressWarnings("unchecked")// the array's component type is C
+        private C get(Object array, int index) {
+            return (C) Array.get(array, index);
+        }
+
+        @Override
+        public Object decode(ByteBuffer in) {
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining() / Integer.BYTES) throw new BufferUnderflowException();// each element has a length
+            Object array = Array.newInstance(this.componentType, length);
+            for (int i = 0; i < Array.getLength(array); i++)
+                Array.set(array, i, this.componentCodec.decode(BinaryUtil.getSlice(in, in.getInt())));
+            return array;
         }
     }
 }
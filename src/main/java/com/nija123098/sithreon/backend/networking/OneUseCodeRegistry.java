@@ -0,0 +1,108 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.StringUtil;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The single use authentication codes issued to machines this machine
+ * launches, such as the containers of a {@link com.nija123098.sithreon.backend.machines.GameServer}.
+ * <p>
+ * Codes expire after {@link Config#oneUseCodeLifetime} so those of machines that
+ * never connect do not build up, and at most {@link Config#maximumOneUseCodes}
+ * are held, the soonest to expire being dropped to issue another.
+ *
+ * @author nija123098
+ */
+class OneUseCodeRegistry {
+    /**
+     * The number of random bytes of a code.
+     */
+    private static final int CODE_SIZE = 32;
+
+    /**
+     * A {@link SecureRandom} to generate codes.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The time in milliseconds each issued code expires by code.
+     */
+    private final Map<String, Long> codes = new ConcurrentHashMap<>();
+
+    /**
+     * The number of codes that expired or were dropped without being used.
+     */
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * Issues a new code.
+     *
+     * @return the code.
+     */
+    String issue() {
+        this.purge();
+        int maximum = Math.max(1, Config.maximumOneUseCodes);// at least the code being issued
+        while (this.codes.size() >= maximum) {
+            this.codes.entrySet().stream().min(Map.Entry.comparingByValue()).ifPresent(entry -> {
+                if (this.codes.remove(entry.getKey(), entry.getValue())) this.expiredCount.incrementAndGet();
+            });
+        }
+        byte[] bytes = new byte[CODE_SIZE];
+        String code;
+        do {
+            RANDOM.nextBytes(bytes);
+            code = StringUtil.base64EncodeOneLine(bytes);
+        } while (this.codes.putIfAbsent(code, System.currentTimeMillis() + Config.oneUseCodeLifetime) != null);
+        return code;
+    }
+
+    /**
+     * Uses a code, so it can not be used again.
+     *
+     * @param code the code.
+     * @return if the code was issued and had not expired or been used.
+     */
+    boolean use(String code) {
+        Long expiry = this.codes.remove(code);
+        if (expiry == null) return false;
+        if (expiry >= System.currentTimeMillis()) return true;
+        this.expiredCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Removes the expired codes, logging how many expired unused.
+     */
+    private void purge() {
+        long now = System.currentTimeMillis();
+        int before = this.codes.size();
+        this.codes.values().removeIf(expiry -> expiry < now);
+        int expired = before - this.codes.size();
+        if (expired <= 0) return;// codes issued or used meanwhile only make this inexact
+        Log.INFO.log(expired + " one use authentication codes expired unused, " + this.expiredCount.addAndGet(expired) + " in total");
+    }
+
+    /**
+     * Gets the number of codes that expired or were dropped without being used.
+     *
+     * @return the number of codes that expired or were dropped without being used.
+     */
+    long getExpiredCount() {
+        return this.expiredCount.get();
+    }
+
+    /**
+     * Gets the number of codes held.
+     *
+     * @return the number of codes held.
+     */
+    int size() {
+        return this.codes.size();
+    }
+}
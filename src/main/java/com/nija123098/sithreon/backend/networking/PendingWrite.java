@@ -0,0 +1,286 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.util.BufferPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A frame waiting in a {@link TransferSocket}'s write queue
+ * paired with the future to complete once it is written.
+ * <p>
+ * The frame's array is from the {@link BufferPool} and
+ * is returned to it once the frame is written or dropped.
+ * <p>
+ * A {@link Lane#BULK} frame is written as chunks, each a view of the
+ * frame's array after a header of the chunk's length with the
+ * {@link PendingWrite#CHUNK_FLAG} and, for the last, the {@link PendingWrite#FINAL_FLAG}.
+ * <p>
+ * A frame may be followed by a region of a file, which is written
+ * after the frame's bytes without being read onto the heap.
+ *
+ * @author nija123098
+ */
+class PendingWrite {
+    /**
+     * The flag on a length prefix indicating the bytes are a chunk of a {@link Lane#BULK} frame.
+     */
+    static final int CHUNK_FLAG = 0x80000000;
+
+    /**
+     * The flag on a length prefix indicating the chunk is the last of it's frame.
+     */
+    static final int FINAL_FLAG = 0x40000000;
+
+    /**
+     * The bits of a length prefix for the length.
+     */
+    static final int LENGTH_MASK = ~(CHUNK_FLAG | FINAL_FLAG);
+
+    /**
+     * The maximum size of the buffer a region is copied through when it can not be transferred.
+     */
+    private static final int REGION_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The chunk's header to write before the frame, or null if this is not a chunk.
+     */
+    private final ByteBuffer header;
+
+    /**
+     * The frame to write, including it's length prefix if it is not a chunk.
+     */
+    private final ByteBuffer frame;
+
+    /**
+     * The file with the region written after the frame, or null.
+     */
+    private final FileChannel region;
+
+    /**
+     * The index in the file of the region not yet written or taken as a chunk.
+     */
+    private long regionPosition;
+
+    /**
+     * The number of bytes of the region not yet written or taken as a chunk.
+     */
+    private long regionRemaining;
+
+    /**
+     * The frame this is a chunk of, or null if this is not a chunk.
+     */
+    private final PendingWrite whole;
+
+    /**
+     * If this is the last chunk of it's frame.
+     */
+    private final boolean last;
+
+    /**
+     * The future to complete when the frame has been written.
+     */
+    private final CompletableFuture<Void> future;
+
+    /**
+     * If the frame has been released, so it is only released once.
+     */
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * Constructs an instance for the provided frame.
+     *
+     * @param frame the frame to write, including it's length prefix.
+     */
+    PendingWrite(ByteBuffer frame) {
+        this(null, frame, null, false, null, 0, 0);
+    }
+
+    /**
+     * Constructs an instance for the provided frame followed by a region of a file.
+     *
+     * @param frame    the frame to write, including it's length prefix.
+     * @param region   the file to write the region of.
+     * @param position the index in the file of the region.
+     * @param length   the number of bytes of the region.
+     */
+    PendingWrite(ByteBuffer frame, FileChannel region, long position, long length) {
+        this(null, frame, null, false, region, position, length);
+    }
+
+    /**
+     * Constructs an instance for a chunk of a frame.
+     *
+     * @param header   the chunk's header.
+     * @param frame    the view of the chunk's bytes from the frame.
+     * @param whole    the frame this is a chunk of.
+     * @param last     if this is the last chunk of the frame.
+     * @param region   the file with the region written after the frame, or null.
+     * @param position the index in the file of the region.
+     * @param length   the number of bytes of the region.
+     */
+    private PendingWrite(ByteBuffer header, ByteBuffer frame, PendingWrite whole, boolean last, FileChannel region, long position, long length) {
+        this.header = header;
+        this.frame = frame;
+        this.region = region;
+        this.regionPosition = position;
+        this.regionRemaining = length;
+        this.whole = whole;
+        this.last = last;
+        this.future = whole == null ? new CompletableFuture<>() : whole.future;
+    }
+
+    /**
+     * Takes the next chunk of this frame, consuming it's bytes then those of it's region.
+     *
+     * @param maximum the maximum number of bytes of the chunk.
+     * @return the next chunk of this frame.
+     */
+    PendingWrite nextChunk(int maximum) {
+        int length = Math.min(maximum, this.frame.remaining());
+        ByteBuffer view = this.frame.duplicate();
+        view.limit(view.position() + length);
+        this.frame.position(this.frame.position() + length);
+        long regionLength = Math.min(maximum - length, this.regionRemaining);
+        long regionPosition = this.regionPosition;
+        this.regionPosition += regionLength;
+        this.regionRemaining -= regionLength;
+        boolean last = !this.hasRemaining();
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) (length + regionLength) | CHUNK_FLAG | (last ? FINAL_FLAG : 0));
+        return new PendingWrite(header, view, this, last, this.region, regionPosition, regionLength);
+    }
+
+    /**
+     * Gets if any bytes of the frame or it's region have not been written or taken as a chunk.
+     *
+     * @return if any bytes have not been written or taken as a chunk.
+     */
+    boolean hasRemaining() {
+        return this.frame.hasRemaining() || this.regionRemaining > 0;
+    }
+
+    /**
+     * Gets if the frame's bytes have been written and only the region remains.
+     *
+     * @return if only the region remains to be written.
+     */
+    boolean isRegionNext() {
+        return this.regionRemaining > 0 && !this.frame.hasRemaining() && (this.header == null || !this.header.hasRemaining());
+    }
+
+    /**
+     * Writes as much of the region as the channel accepts, straight from the file where the platform is able to.
+     *
+     * @param channel the channel to write to.
+     * @throws IOException if reading the file or writing the channel throws an {@link IOException}.
+     */
+    void writeRegion(WritableByteChannel channel) throws IOException {
+        long written = this.region.transferTo(this.regionPosition, this.regionRemaining, channel);
+        this.regionPosition += written;
+        this.regionRemaining -= written;
+    }
+
+    /**
+     * Writes the region to a stream through a pooled buffer, for connections without a channel.
+     *
+     * @param stream the stream to write to.
+     * @throws IOException if reading the file or writing the stream throws an {@link IOException}.
+     */
+    void writeRegion(OutputStream stream) throws IOException {
+        byte[] bytes = BufferPool.acquire((int) Math.min(this.regionRemaining, REGION_BUFFER_SIZE));
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (this.regionRemaining > 0) {
+                buffer.clear().limit((int) Math.min(bytes.length, this.regionRemaining));
+                int read = this.region.read(buffer, this.regionPosition);
+                if (read == -1) throw new EOFException("File region ended early");
+                stream.write(bytes, 0, read);
+                this.regionPosition += read;
+                this.regionRemaining -= read;
+            }
+        } finally {
+            BufferPool.release(bytes);
+        }
+    }
+
+    /**
+     * Gets the chunk header to write before the frame.
+     *
+     * @return the chunk header, or null if this is not a chunk.
+     */
+    ByteBuffer getHeader() {
+        return this.header;
+    }
+
+    /**
+     * Gets the frame to write.
+     *
+     * @return the frame to write.
+     */
+    ByteBuffer getFrame() {
+        return this.frame;
+    }
+
+    /**
+     * Gets the future to complete when the frame has been written.
+     *
+     * @return the future to complete when the frame has been written.
+     */
+    CompletableFuture<Void> getFuture() {
+        return this.future;
+    }
+
+    /**
+     * Gets if this is a chunk of a {@link Lane#BULK} frame.
+     *
+     * @return if this is a chunk of a {@link Lane#BULK} frame.
+     */
+    boolean isChunk() {
+        return this.whole != null;
+    }
+
+    /**
+     * Gets if this has been entirely written.
+     *
+     * @return if this has been entirely written.
+     */
+    boolean isWritten() {
+        return !this.frame.hasRemaining() && this.regionRemaining == 0 && (this.header == null || !this.header.hasRemaining());
+    }
+
+    /**
+     * Releases the frame and completes the future, after the frame has been written.
+     * <p>
+     * A chunk only completes it's frame if it is the last chunk.
+     */
+    void complete() {
+        if (this.whole != null) {
+            if (this.last) this.whole.complete();
+            return;
+        }
+        if (!this.released.compareAndSet(false, true)) return;
+        BufferPool.release(this.frame.array());
+        this.future.complete(null);
+    }
+
+    /**
+     * Releases the frame and completes the future exceptionally, if the frame will not be written.
+     *
+     * @param throwable the reason the frame will not be written.
+     */
+    void fail(Throwable throwable) {
+        if (this.whole != null) {
+            this.whole.fail(throwable);
+            return;
+        }
+        if (!this.released.compareAndSet(false, true)) return;
+        BufferPool.release(this.frame.array());
+        this.future.completeExceptionally(throwable);
+    }
+}
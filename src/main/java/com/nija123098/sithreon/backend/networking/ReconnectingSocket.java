@@ -0,0 +1,151 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.Machine;
+import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.ThreadMaker;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A connection to a higher server which is made again when it closes,
+ * instead of closing it's {@link Machine}.
+ * <p>
+ * Attempts are delayed by a jittered exponential backoff, starting at {@link Config#reconnectInitialDelay}
+ * and doubling to {@link Config#reconnectMaximumDelay}, so a restarted server is not met by every
+ * machine at once.  Each new connection authenticates as usual, resuming it's session if it can,
+ * then runs the action given at construction, which re-announces the machine to the server.
+ *
+ * @author nija123098
+ */
+public class ReconnectingSocket {
+    /**
+     * The thread making connections again.
+     */
+    private static final ScheduledThreadPoolExecutor RECONNECTS = new ScheduledThreadPoolExecutor(1, r -> ThreadMaker.getThread(ThreadMaker.NETWORK, "Reconnect Thread", true, r));
+
+    /**
+     * The {@link Machine} the connection belongs to.
+     */
+    private final Machine machine;
+
+    /**
+     * The host address of the server.
+     */
+    private final String host;
+
+    /**
+     * The port of the server.
+     */
+    private final Integer port;
+
+    /**
+     * The action run each time a connection is authenticated.
+     */
+    private final Consumer<TransferSocket> onAuthentication;
+
+    /**
+     * The latest connection, which may be closed while reconnecting.
+     */
+    private final AtomicReference<TransferSocket> socket = new AtomicReference<>();
+
+    /**
+     * The number of attempts since the last authenticated connection.
+     */
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    /**
+     * The {@link System#currentTimeMillis()} the last authenticated connection was lost at, or 0 while connected.
+     */
+    private volatile long disconnectTime;
+
+    /**
+     * If this instance is closed and will not reconnect.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Connects to a server, reconnecting whenever the connection closes until the {@link Machine} closes.
+     *
+     * @param machine          the {@link Machine} the connection belongs to.
+     * @param host             the host address of the server.
+     * @param port             the port of the server.
+     * @param onAuthentication the action to run each time a connection is authenticated.
+     * @throws IOException if the first connection can not be made.
+     */
+    public ReconnectingSocket(Machine machine, String host, Integer port, Consumer<TransferSocket> onAuthentication) throws IOException {
+        this.machine = machine;
+        this.host = host;
+        this.port = port;
+        this.onAuthentication = onAuthentication;
+        this.connect();
+        machine.runOnClose(this::close);
+    }
+
+    /**
+     * Gets the latest connection, which is closed while reconnecting.
+     *
+     * @return the latest connection.
+     */
+    public TransferSocket get() {
+        return this.socket.get();
+    }
+
+    /**
+     * Makes a connection, reconnecting when it closes.
+     *
+     * @throws IOException if the connection can not be made.
+     */
+    private void connect() throws IOException {
+        TransferSocket socket = new TransferSocket(this.machine, this.host, this.port, true);
+        this.socket.set(socket);
+        socket.registerAuthenticationAction(authenticated -> {
+            this.attempts.set(0);
+            this.disconnectTime = 0;
+            this.onAuthentication.accept(authenticated);
+        });
+        socket.getCloseFuture().thenRun(this::scheduleReconnect);// runs now if it already closed
+    }
+
+    /**
+     * Schedules the next attempt to connect after the backoff, or closes the {@link Machine}
+     * if it has been disconnected for longer than {@link Config#reconnectTimeout}.
+     */
+    private void scheduleReconnect() {
+        if (this.closed.get() || this.machine.closing()) return;
+        if (this.disconnectTime == 0) this.disconnectTime = System.currentTimeMillis();
+        else if (Config.reconnectTimeout > 0 && System.currentTimeMillis() - this.disconnectTime > Config.reconnectTimeout) {
+            Log.WARN.log("Unable to reconnect to " + this.host + ":" + this.port + " within " + Config.reconnectTimeout + "ms, closing machine");
+            this.machine.close();
+            return;
+        }
+        long ceiling = Math.min(Config.reconnectMaximumDelay, Config.reconnectInitialDelay << Math.min(this.attempts.getAndIncrement(), 30));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);// at least half, so attempts still back off
+        Log.INFO.log("Reconnecting to " + this.host + ":" + this.port + " in " + delay + "ms");
+        RECONNECTS.schedule(() -> {
+            if (this.closed.get() || this.machine.closing()) return;
+            try {
+                this.connect();
+            } catch (IOException e) {
+                Log.DEBUG.log("Unable to reconnect to " + this.host + ":" + this.port, e);
+                this.scheduleReconnect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the connection without reconnecting.
+     */
+    public void close() {
+        if (this.closed.getAndSet(true)) return;
+        TransferSocket socket = this.socket.get();
+        if (socket != null) socket.close();
+    }
+}
@@ -0,0 +1,70 @@
+package com.nija123098.sithreon.backend.networking;
+
+/**
+ * A smoothed round trip time and it's variation, the jitter,
+ * measured by the heartbeats of a {@link TransferSocket}.
+ * <p>
+ * Samples are smoothed as TCP smooths it's round trip time,
+ * the estimate moving an eighth and the variation a quarter of the way to each sample.
+ *
+ * @author nija123098
+ */
+class RoundTripEstimator {
+    /**
+     * The smoothed round trip time in nanoseconds, or -1 if there have been no samples.
+     */
+    private long smoothed = -1;
+
+    /**
+     * The smoothed deviation of samples from the round trip time in nanoseconds.
+     */
+    private long variation;
+
+    /**
+     * The number of samples taken.
+     */
+    private long samples;
+
+    /**
+     * Adds a measured round trip to the estimate.
+     *
+     * @param roundTrip the nanoseconds between sending a heartbeat and receiving it's echo.
+     */
+    synchronized void sample(long roundTrip) {
+        if (this.smoothed == -1) {// the first sample is all that is known
+            this.smoothed = roundTrip;
+            this.variation = roundTrip / 2;
+        } else {
+            this.variation += (Math.abs(this.smoothed - roundTrip) - this.variation) / 4;
+            this.smoothed += (roundTrip - this.smoothed) / 8;
+        }
+        ++this.samples;
+    }
+
+    /**
+     * Gets the smoothed round trip time.
+     *
+     * @return the smoothed round trip time in nanoseconds, or -1 if it has not been measured.
+     */
+    synchronized long getRoundTripTime() {
+        return this.smoothed;
+    }
+
+    /**
+     * Gets the smoothed variation of the round trip time.
+     *
+     * @return the jitter in nanoseconds, or -1 if it has not been measured.
+     */
+    synchronized long getJitter() {
+        return this.smoothed == -1 ? -1 : this.variation;
+    }
+
+    /**
+     * Gets the number of round trips measured.
+     *
+     * @return the number of round trips measured.
+     */
+    synchronized long getSampleCount() {
+        return this.samples;
+    }
+}
@@ -0,0 +1,285 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.StringUtil;
+import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
+import com.nija123098.sithreon.backend.util.throwable.SithreonSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A session of a {@link TransferSocket} authenticated with certificates which
+ * a reconnecting machine may resume by proving it holds the session's secret
+ * with a MAC, rather than repeating the RSA operations of a full authentication.
+ * <p>
+ * The accepting side issues a ticket once both sides have authenticated and keeps it
+ * until it expires, the connecting side holds it by the address it connected to.
+ * The secret is never sent, both sides derive it from the challenges of the full
+ * authentication, which are only known to them.
+ *
+ * @author nija123098
+ */
+class SessionTicket {
+    /**
+     * The number of bytes of the nonces each side contributes when resuming a session.
+     */
+    static final int NONCE_SIZE = 32;
+
+    /**
+     * The MAC algorithm for deriving secrets and proving them.
+     */
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * The label of the accepting side's proof, so one side's proof can not be reflected as the other's.
+     */
+    private static final byte ACCEPTING_PROOF = 0;
+
+    /**
+     * The label of the connecting side's proof.
+     */
+    private static final byte CONNECTING_PROOF = 1;
+
+    /**
+     * A {@link SecureRandom} to generate ticket ids and nonces.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The tickets this machine has issued by id.
+     */
+    private static final Map<String, SessionTicket> ISSUED = new ConcurrentHashMap<>();
+
+    /**
+     * The tickets this machine has been issued by the address they were issued by.
+     */
+    private static final Map<String, SessionTicket> HELD = new ConcurrentHashMap<>();
+
+    /**
+     * The id the ticket is presented by.
+     */
+    private final String id;
+
+    /**
+     * The secret the sides prove they hold.
+     */
+    private final byte[] secret;
+
+    /**
+     * The time in milliseconds after which the ticket may not be used.
+     */
+    private final long expiry;
+
+    /**
+     * The certificate the other side authenticated as.
+     */
+    private final Certificate certificate;
+
+    /**
+     * The actions the other side was allowed.
+     */
+    private final EnumSet<MachineAction> permissions;
+
+    /**
+     * Constructs a ticket.
+     *
+     * @param id          the id the ticket is presented by.
+     * @param secret      the secret the sides prove they hold.
+     * @param expiry      the time in milliseconds after which the ticket may not be used.
+     * @param certificate the certificate the other side authenticated as.
+     * @param permissions the actions the other side was allowed.
+     */
+    SessionTicket(String id, byte[] secret, long expiry, Certificate certificate, Collection<MachineAction> permissions) {
+        this.id = id;
+        this.secret = secret;
+        this.expiry = expiry;
+        this.certificate = certificate;
+        this.permissions = permissions.isEmpty() ? EnumSet.noneOf(MachineAction.class) : EnumSet.copyOf(permissions);
+    }
+
+    /**
+     * Issues a ticket for a session this machine accepted.
+     *
+     * @param secret      the secret of the session.
+     * @param certificate the certificate the other side authenticated as.
+     * @param permissions the actions the other side was allowed.
+     * @return the issued ticket.
+     */
+    static SessionTicket issue(byte[] secret, Certificate certificate, Collection<MachineAction> permissions) {
+        long now = System.currentTimeMillis();
+        ISSUED.values().removeIf(ticket -> ticket.expiry < now);// tickets are rarely issued, so this keeps the map small
+        SessionTicket ticket = new SessionTicket(StringUtil.base64EncodeOneLine(newNonce()), secret, now + Config.sessionTicketLifetime, certificate, permissions);
+        ISSUED.put(ticket.id, ticket);
+        return ticket;
+    }
+
+    /**
+     * Gets a ticket this machine issued.
+     *
+     * @param id the id of the ticket.
+     * @return the ticket, or null if it is unknown, expired, or it's certificate is no longer trusted.
+     */
+    static SessionTicket getIssued(String id) {
+        SessionTicket ticket = ISSUED.get(id);
+        if (ticket == null || ticket.expiry >= System.currentTimeMillis() && ticket.isTrusted()) return ticket;
+        ISSUED.remove(id, ticket);
+        return null;
+    }
+
+    /**
+     * Holds a ticket issued to this machine.
+     *
+     * @param address the address of the machine that issued the ticket.
+     * @param ticket  the ticket.
+     */
+    static void hold(String address, SessionTicket ticket) {
+        HELD.put(address, ticket);
+    }
+
+    /**
+     * Gets the ticket held for an address.
+     *
+     * @param address the address of the machine that issued the ticket.
+     * @return the ticket, or null if none is held, it has expired, or it's certificate is no longer trusted.
+     */
+    static SessionTicket getHeld(String address) {
+        SessionTicket ticket = HELD.get(address);
+        if (ticket == null || ticket.expiry >= System.currentTimeMillis() && ticket.isTrusted()) return ticket;
+        HELD.remove(address, ticket);
+        return null;
+    }
+
+    /**
+     * Stops holding a ticket which was rejected.
+     *
+     * @param address the address of the machine that issued the ticket.
+     * @param ticket  the rejected ticket.
+     */
+    static void forget(String address, SessionTicket ticket) {
+        HELD.remove(address, ticket);
+    }
+
+    /**
+     * Checks the certificate the ticket was issued for again, so a certificate
+     * which expired or was revoked since can not keep resuming sessions.
+     *
+     * @return if the certificate is still valid.
+     */
+    boolean isTrusted() {
+        if (this.certificate == null) return false;
+        try {
+            this.certificate.check();
+            return true;
+        } catch (SithreonSecurityException e) {
+            Log.INFO.log("Certificate of session ticket " + this.id + " is no longer valid", e);
+            return false;
+        }
+    }
+
+    /**
+     * Generates a random nonce.
+     *
+     * @return a new nonce of {@link SessionTicket#NONCE_SIZE} bytes.
+     */
+    static byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_SIZE];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * Derives the secret of a session from the challenges of it's full authentication.
+     *
+     * @param acceptingChallenge  the challenge the accepting side sent.
+     * @param connectingChallenge the challenge the connecting side sent.
+     * @return the secret of the session.
+     */
+    static byte[] deriveSecret(byte[] acceptingChallenge, byte[] connectingChallenge) {
+        byte[] key = new byte[acceptingChallenge.length + connectingChallenge.length];
+        System.arraycopy(acceptingChallenge, 0, key, 0, acceptingChallenge.length);
+        System.arraycopy(connectingChallenge, 0, key, acceptingChallenge.length, connectingChallenge.length);
+        return mac(key, "SITHREON session".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Computes the MAC of bytes.
+     *
+     * @param key   the key.
+     * @param parts the bytes, in order.
+     * @return the MAC.
+     */
+    private static byte[] mac(byte[] key, byte[]... parts) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            for (byte[] part : parts) mac.update(part);
+            return mac.doFinal();
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            Log.ERROR.log("Invalid security settings", e);
+            throw new NoReturnException();
+        }
+    }
+
+    /**
+     * Computes a side's proof that it holds the secret, for the nonces of one resumption.
+     *
+     * @param accepting       if the proof is the accepting side's.
+     * @param connectingNonce the connecting side's nonce.
+     * @param acceptingNonce  the accepting side's nonce.
+     * @return the proof.
+     */
+    byte[] prove(boolean accepting, byte[] connectingNonce, byte[] acceptingNonce) {
+        return mac(this.secret, new byte[]{accepting ? ACCEPTING_PROOF : CONNECTING_PROOF}, connectingNonce, acceptingNonce);
+    }
+
+    /**
+     * Checks a side's proof that it holds the secret in constant time.
+     *
+     * @param accepting       if the proof is the accepting side's.
+     * @param proof           the proof to check.
+     * @param connectingNonce the connecting side's nonce.
+     * @param acceptingNonce  the accepting side's nonce.
+     * @return if the proof is correct.
+     */
+    boolean check(boolean accepting, byte[] proof, byte[] connectingNonce, byte[] acceptingNonce) {
+        return MessageDigest.isEqual(proof, this.prove(accepting, connectingNonce, acceptingNonce));
+    }
+
+    /**
+     * Gets the id the ticket is presented by.
+     *
+     * @return the id the ticket is presented by.
+     */
+    String getId() {
+        return this.id;
+    }
+
+    /**
+     * Gets the certificate the other side authenticated as.
+     *
+     * @return the certificate the other side authenticated as.
+     */
+    Certificate getCertificate() {
+        return this.certificate;
+    }
+
+    /**
+     * Gets the actions the other side was allowed.
+     *
+     * @return the actions the other side was allowed.
+     */
+    EnumSet<MachineAction> getPermissions() {
+        return this.permissions;
+    }
+}
@@ -1,27 +1,53 @@
 package com.nija123098.sithreon.backend.networking;
 
+import com.nija123098.sithreon.backend.Config;
 import com.nija123098.sithreon.backend.Machine;
 import com.nija123098.sithreon.backend.util.Log;
 import com.nija123098.sithreon.backend.util.ThreadMaker;
 import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.HashSet;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The wrapper for a {@link ServerSocket} which accepts all incoming sockets
  * and wraps those in {@link TransferSocket}s which handle authentication.
+ * <p>
+ * An acceptor may instead accept over a Unix domain socket file, for machines on the same host.
  *
  * @author nija123098
  */
 public class SocketAcceptor {
     private final ServerSocket serverSocket;
+    private final ServerSocketChannel serverSocketChannel;
     private final AtomicBoolean closed = new AtomicBoolean();
-    private final Set<TransferSocket> sockets = new HashSet<>();
+
+    /**
+     * The Unix domain socket file accepted on, or null if accepting over TCP.
+     */
+    private final Path socketFile;
+
+    /**
+     * The server accepting connections in this program instance if {@link Config#loopbackTransport} is enabled, or null.
+     */
+    private final LoopbackTransport.Server loopbackServer;
+
+    /**
+     * The accepted connections which have not closed.
+     */
+    private final Set<TransferSocket> sockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The accepted connections which have not closed or authenticated.
+     */
+    private final Set<TransferSocket> unauthenticatedSockets = ConcurrentHashMap.newKeySet();
 
     /**
      * Constructs a socket acceptor.
@@ -29,20 +55,67 @@ public class SocketAcceptor {
      * @param machine the {@link Machine} which this instance operates for.
      */
     public SocketAcceptor(Machine machine, Integer port) {
+        this.socketFile = null;
         try {
-            this.serverSocket = new ServerSocket(port);
+            if (Config.loopbackTransport) {
+                this.loopbackServer = LoopbackTransport.listen(port);
+                this.serverSocketChannel = null;
+                this.serverSocket = null;
+            } else if (Config.nonBlockingTransport) {
+                this.loopbackServer = null;
+                this.serverSocketChannel = ServerSocketChannel.open();
+                this.serverSocketChannel.bind(new InetSocketAddress(port));
+                this.serverSocket = this.serverSocketChannel.socket();
+            } else {
+                this.loopbackServer = null;
+                this.serverSocketChannel = null;
+                this.serverSocket = new ServerSocket(port);
+            }
         } catch (IOException e) {
             Log.ERROR.log("Unable to make server socket", e);
             throw new NoReturnException();
         }
+        this.start(machine);
+    }
+
+    /**
+     * Constructs a socket acceptor over a Unix domain socket file,
+     * whose connections are always served by an {@link EventLoop}.
+     *
+     * @param machine    the {@link Machine} which this instance operates for.
+     * @param socketFile the socket file to accept on, replaced if it exists.
+     * @throws IOException if the socket file can not be bound, or Unix domain sockets are not supported.
+     */
+    public SocketAcceptor(Machine machine, Path socketFile) throws IOException {
+        this.socketFile = socketFile;
+        this.loopbackServer = null;
+        this.serverSocketChannel = UnixDomainSockets.bind(socketFile);
+        this.serverSocket = null;// a Unix domain socket channel has no ServerSocket
+        this.start(machine);
+    }
+
+    /**
+     * Starts the accepting thread.
+     *
+     * @param machine the {@link Machine} which this instance operates for.
+     */
+    private void start(Machine machine) {
         ThreadMaker.getThread(ThreadMaker.NETWORK, "Socket Acceptor Thread", true, () -> {
             while (!this.closed.get()) {
                 try {
-                    Socket socket = this.serverSocket.accept();// will not throw an NPE
-                    if (this.closed.get()) return;// Ensure that this socket is not accepted while this is closed
-                    this.sockets.add(new TransferSocket(machine, socket, false));
+                    Transport transport = this.accept();// will not throw an NPE
+                    if (this.closed.get()) {// Ensure that this socket is not accepted while this is closed
+                        transport.close();
+                        return;
+                    }
+                    if (this.unauthenticatedSockets.size() >= Config.maximumUnauthenticatedConnections) {
+                        Log.WARN.log("Refusing connection from " + transport.getRemoteName() + " with " + this.unauthenticatedSockets.size() + " connections already authenticating");
+                        transport.close();
+                        continue;
+                    }
+                    this.register(new TransferSocket(machine, transport, false));
                 } catch (IOException e) {
-                    Log.WARN.log("IOException accepting socket", e);
+                    if (!this.closed.get()) Log.WARN.log("IOException accepting socket", e);// closing the server socket interrupts accepting
                 }
             }
         }).start();
@@ -50,12 +123,66 @@ public class SocketAcceptor {
         Log.DEBUG.log("Started socket acceptor");
     }
 
+    /**
+     * Accepts the next connection, registering it with an {@link EventLoop}
+     * if {@link Config#nonBlockingTransport} is enabled.
+     *
+     * @return the {@link Transport} for the accepted connection.
+     * @throws IOException if accepting the connection throws an {@link IOException}.
+     */
+    private Transport accept() throws IOException {
+        if (this.loopbackServer != null) return this.loopbackServer.accept();
+        if (this.serverSocketChannel == null) return new StreamTransport(this.serverSocket.accept());
+        if (this.socketFile != null) return new ChannelTransport(this.serverSocketChannel.accept(), "unix:" + this.socketFile);
+        return new ChannelTransport(this.serverSocketChannel.accept());
+    }
+
+    /**
+     * Tracks an accepted connection until it authenticates and until it closes.
+     *
+     * @param socket the accepted connection.
+     */
+    private void register(TransferSocket socket) {
+        this.sockets.add(socket);
+        this.unauthenticatedSockets.add(socket);
+        socket.registerAuthenticationAction(this.unauthenticatedSockets::remove);
+        socket.getCloseFuture().thenRun(() -> {// runs now if it already closed
+            this.sockets.remove(socket);
+            this.unauthenticatedSockets.remove(socket);
+        });
+    }
+
+    /**
+     * Gets the number of accepted connections which have not closed.
+     *
+     * @return the number of accepted connections which have not closed.
+     */
+    public int getConnectionCount() {
+        return this.sockets.size();
+    }
+
+    /**
+     * Gets the number of accepted connections which have not closed or authenticated.
+     *
+     * @return the number of accepted connections still authenticating.
+     */
+    public int getUnauthenticatedCount() {
+        return this.unauthenticatedSockets.size();
+    }
+
     /**
      * Closes this acceptor and it's accepting thread.
      */
     private void close() {
-        if (this.closed.get()) return;
-        this.closed.set(true);
+        if (this.closed.getAndSet(true)) return;
         this.sockets.forEach(TransferSocket::close);
+        try {
+            if (this.loopbackServer != null) this.loopbackServer.close();// unblocks the accepting thread
+            else if (this.serverSocketChannel != null) this.serverSocketChannel.close();
+            else this.serverSocket.close();
+            if (this.socketFile != null) Files.deleteIfExists(this.socketFile);
+        } catch (IOException e) {
+            Log.WARN.log("IOException closing server socket", e);
+        }
     }
 }
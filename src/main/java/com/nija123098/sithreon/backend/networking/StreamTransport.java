@@ -0,0 +1,193 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.util.ByteQueue;
+import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.ThreadMaker;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link Transport} over a blocking {@link Socket} with a read thread for the connection.
+ *
+ * @author nija123098
+ */
+class StreamTransport implements Transport {
+    /**
+     * The minimum number of bytes to attempt to read at once.
+     */
+    private static final int READ_SIZE = 1024;
+
+    /**
+     * The size of the buffer queued frames are coalesced in before being sent.
+     */
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The threads queued frames of blocking connections are written on.
+     */
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> ThreadMaker.getThread(ThreadMaker.NETWORK, "Transfer Socket Write Thread", true, r));
+
+    /**
+     * The {@link Socket} this wraps.
+     */
+    private final Socket socket;
+
+    /**
+     * The {@link InputStream} for the {@code socket}.
+     */
+    private final InputStream inputStream;
+
+    /**
+     * The {@link OutputStream} for the {@code socket}.
+     */
+    private final OutputStream outputStream;
+
+    /**
+     * The remote address of the {@code socket}, cached since it is not available after closing.
+     */
+    private final String remoteName;
+
+    /**
+     * If a writer is draining the write queue, so only one writes at a time.
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * The {@link TransferSocket} to take queued frames from.
+     */
+    private volatile TransferSocket transferSocket;
+
+    /**
+     * Constructs a transport for a connected {@link Socket}.
+     *
+     * @param socket the connected {@link Socket}.
+     * @throws IOException if flushing or a stream throws an {@link IOException}.
+     */
+    StreamTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        this.remoteName = String.valueOf(socket.getRemoteSocketAddress());
+        this.socket.setTcpNoDelay(true);// writes are already coalesced
+        this.outputStream = new BufferedOutputStream(this.socket.getOutputStream(), WRITE_BUFFER_SIZE);
+        this.outputStream.flush();
+        this.inputStream = this.socket.getInputStream();
+    }
+
+    @Override
+    public void start(TransferSocket transferSocket) {
+        this.transferSocket = transferSocket;
+        if (!transferSocket.getWriteQueue().isEmpty()) this.scheduleWrite();
+        ThreadMaker.getThread(ThreadMaker.NETWORK, "Transfer Socket Read Thread " + this.remoteName, true, () -> {// constantly reads
+            int readSize;
+            ByteQueue buffer = transferSocket.getReceiveBuffer();
+            while (!transferSocket.isClosed()) {
+                try {
+                    Log.TRACE.log("Waiting for more bytes from " + this.remoteName);
+                    buffer.ensureWritable(READ_SIZE);
+                    readSize = this.inputStream.read(buffer.getArray(), buffer.getWriteIndex(), buffer.getWritableLength());
+                    if (readSize == -1) {
+                        transferSocket.close();
+                        return;
+                    }
+                    buffer.written(readSize);
+                    transferSocket.receive();
+                } catch (EOFException e) {
+                    Log.INFO.log("Opposite side closed " + this.remoteName);
+                    transferSocket.close();
+                } catch (SocketException e) {
+                    switch (String.valueOf(e.getMessage())) {
+                        case "Connection reset":
+                            Log.INFO.log("Opposite side closed " + this.remoteName);
+                            transferSocket.close();
+                            break;
+                        case "Socket closed":
+                            if (!transferSocket.isClosed()) {
+                                Log.WARN.log("Opposite side unexpectedly closed connection", e);
+                                transferSocket.close();
+                            }
+                            break;
+                        case "Software caused connection abort: recv failed":
+                            Log.WARN.log("Software connection abort: recv failed, socket restart required");
+                            transferSocket.close();
+                            break;
+                        default:
+                            Log.WARN.log("Unable to handle SocketException, continuing as normal", e);
+                            break;
+                    }
+                } catch (IOException e) {
+                    Log.WARN.log("IOException receiving object", e);
+                }
+            }
+        }).start();
+    }
+
+    @Override
+    public void scheduleWrite() {
+        if (this.transferSocket != null && this.draining.compareAndSet(false, true)) WRITERS.execute(this::drain);
+    }
+
+    /**
+     * Writes queued frames until the write queue is empty, flushing only once it is.
+     */
+    private void drain() {
+        WriteQueue writeQueue = this.transferSocket.getWriteQueue();
+        List<PendingWrite> written = new ArrayList<>();
+        PendingWrite write;
+        try {
+            do {
+                while ((write = writeQueue.poll()) != null) {
+                    ByteBuffer header = write.getHeader();
+                    if (header != null) {
+                        this.outputStream.write(header.array(), header.arrayOffset() + header.position(), header.remaining());
+                        header.position(header.limit());
+                    }
+                    ByteBuffer frame = write.getFrame();
+                    this.outputStream.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+                    frame.position(frame.limit());
+                    if (write.isRegionNext()) write.writeRegion(this.outputStream);// the socket has no channel to transfer to
+                    written.add(write);
+                }
+                this.outputStream.flush();
+                written.forEach(PendingWrite::complete);
+                written.clear();
+                this.draining.set(false);
+            } while (!writeQueue.isEmpty() && this.draining.compareAndSet(false, true));// raced a write
+        } catch (IOException e) {
+            written.forEach(pending -> pending.fail(e));
+            this.draining.set(false);
+            if (!this.transferSocket.isClosed()) {
+                Log.WARN.log("IOException writing to " + this.remoteName, e);
+                this.transferSocket.close();
+            }
+        }
+    }
+
+    @Override
+    public Executor getActionExecutor() {
+        return null;// actions run on the read thread
+    }
+
+    @Override
+    public String getRemoteName() {
+        return this.remoteName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.inputStream.close();
+        this.outputStream.close();
+        this.socket.close();
+    }
+}
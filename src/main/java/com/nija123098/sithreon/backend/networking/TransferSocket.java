@@ -2,36 +2,42 @@ package com.nija123098.sithreon.backend.networking;
 
 import com.nija123098.sithreon.backend.Config;
 import com.nija123098.sithreon.backend.Machine;
-import com.nija123098.sithreon.backend.util.ByteHandler;
+import com.nija123098.sithreon.backend.util.BufferPool;
+import com.nija123098.sithreon.backend.util.ByteQueue;
 import com.nija123098.sithreon.backend.util.Log;
-import com.nija123098.sithreon.backend.util.StringUtil;
+import com.nija123098.sithreon.backend.util.StringTable;
 import com.nija123098.sithreon.backend.util.ThreadMaker;
-import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
 import com.nija123098.sithreon.backend.util.throwable.SithreonSecurityException;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigInteger;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
- * A wrapper for a {@link Socket} which manages sends {@link MachineAction} commands.
+ * A wrapper for a {@link Transport} which manages sends {@link MachineAction} commands.
  * <p>
  * Authentication does not indicate non-repudiation nor
  * does the authentication system guarantee functioning authentication.
@@ -46,47 +52,60 @@ public class TransferSocket implements Comparable<TransferSocket> {
     private static final long AUTHENTICATION_TIME = 15_000;
 
     /**
-     * A {@link SecureRandom} to generate challenge .
+     * The flag on the first byte of a frame for a request, which carries a correlation id.
      */
-    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int REQUEST_FLAG = 0x80;
 
     /**
-     * The {@link Cipher} to decrypt messages sent to this connection.
+     * The flag on the first byte of a frame for a response, which carries the correlation id of it's request.
      */
-    private static final Cipher DECRYPTION_CIPHER;
+    private static final int RESPONSE_FLAG = 0x40;
 
     /**
-     * The set of one use authentication codes.
+     * The bits of the first byte of a frame for the {@link MachineAction} ordinal.
      */
-    private final Set<String> CODES = new TreeSet<>();
+    private static final int ORDINAL_MASK = 0x3F;
 
     /**
-     * Gets a single use authentication code.
-     *
-     * @return the code.
+     * The first byte of a frame whose remaining bytes are the original frame's length then the deflated original frame.
+     * <p>
+     * This is the {@link TransferSocket#ORDINAL_MASK} without flags, which no {@link MachineAction} ordinal reaches.
      */
-    public String getOneUseAuthenticationCode() {
-        byte[] bytes = new byte[32];
-        RANDOM.nextBytes(bytes);
-        String code = StringUtil.base64EncodeOneLine(bytes);
-        if (!CODES.add(code)) return getOneUseAuthenticationCode();
-        return code;
-    }
+    private static final int COMPRESSED_MARKER = ORDINAL_MASK;
+
+    /**
+     * The maximum number of certificates sent or accepted in a chain, bounding a chain with a cycle.
+     */
+    private static final int MAXIMUM_CHAIN_LENGTH = 16;
+
+    /**
+     * The threads timing out requests and authentication, and sending heartbeats.
+     */
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = new ScheduledThreadPoolExecutor(1, r -> ThreadMaker.getThread(ThreadMaker.NETWORK, "Transfer Socket Timeout", true, r));
 
     static {
-        try {
-            DECRYPTION_CIPHER = Cipher.getInstance("RSA/ECB/PKCS1Padding");
-            if (Config.privateKey != null) DECRYPTION_CIPHER.init(Cipher.DECRYPT_MODE, Config.privateKey);
-        } catch (NoSuchAlgorithmException | InvalidKeyException | NoSuchPaddingException e) {
-            Log.ERROR.log("Invalid security settings", e);
-            throw new NoReturnException();
-        }
+        TIMEOUTS.setRemoveOnCancelPolicy(true);// most requests complete before timing out
     }
 
     /**
-     * The {@link Cipher} to encrypt with.
+     * A {@link SecureRandom} to generate challenge .
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The one use authentication codes, shared by every connection since a code
+     * is issued before the machine using it has connected.
      */
-    private final Cipher encryptionCipher;
+    private static final OneUseCodeRegistry CODES = new OneUseCodeRegistry();
+
+    /**
+     * Gets a single use authentication code.
+     *
+     * @return the code.
+     */
+    public String getOneUseAuthenticationCode() {
+        return CODES.issue();
+    }
 
     /**
      * The challenge bytes for authentication.
@@ -103,25 +122,90 @@ public class TransferSocket implements Comparable<TransferSocket> {
      */
     private final boolean masterServerSide;
 
+    /**
+     * If this connection to a higher server is made again by a {@link ReconnectingSocket} when it closes,
+     * rather than closing the {@link Machine}.
+     */
+    private final boolean reconnecting;
+
     /**
      * If this instance is closed.
      */
     private final AtomicBoolean closed = new AtomicBoolean();
 
     /**
-     * The {@link Socket} this wraps.
+     * The {@link Transport} this sends and receives frames through.
+     */
+    private final Transport transport;
+
+    /**
+     * The frames waiting to be written by the {@code transport}.
+     */
+    private final WriteQueue writeQueue = new WriteQueue();
+
+    /**
+     * The requests waiting for responses by correlation id.
+     */
+    private final Map<Integer, CompletableFuture<Object[]>> pendingRequests = new ConcurrentHashMap<>();
+
+    /**
+     * The source of correlation ids for requests.
+     */
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+
+    /**
+     * The correlation id of the request being acted upon, or -1, only valid on the thread acting.
+     */
+    private volatile int actingRequestId = -1;
+
+    /**
+     * The strings sent over this connection by {@link Lane} ordinal, for referencing them in later frames.
+     * <p>
+     * Each lane has it's own table since frames are only received in the order they were encoded within a lane.
      */
-    private final Socket socket;
+    private final StringTable[] outboundStrings = newStringTables();
 
     /**
-     * The {@link InputStream} for the {@code socket}.
+     * The strings received over this connection by {@link Lane} ordinal, for resolving references to them.
      */
-    private final InputStream inputStream;
+    private final StringTable[] inboundStrings = newStringTables();
 
     /**
-     * The {@link OutputStream} for the {@code socket}.
+     * If frames over {@link Config#compressionThreshold} are compressed,
+     * set once both sides have advertised {@link Config#compressFrames}.
      */
-    private final OutputStream outputStream;
+    private volatile boolean compressOutbound;
+
+    /**
+     * The compressors for outbound frames by {@link Lane} ordinal, made when first needed
+     * and only used while holding the lane's {@code outboundStrings} table.
+     */
+    private final Deflater[] deflaters = new Deflater[Lane.values().length];
+
+    /**
+     * The decompressor for inbound frames, only used by the thread handling frames.
+     */
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * The received bytes not yet processed as a frame, only accessed by the {@code transport}'s receiving thread.
+     */
+    private final ByteQueue pendingBytes = new ByteQueue();
+
+    /**
+     * The received chunks of the {@link Lane#BULK} frame being received, only accessed by the {@code transport}'s receiving thread.
+     */
+    private final ByteQueue pendingChunks = new ByteQueue();
+
+    /**
+     * The size of the frame being received or -1 if the size has not been received yet.
+     */
+    private int packageSize = -1;
+
+    /**
+     * The chunk flags of the length prefix of the frame being received.
+     */
+    private int packageFlags;
 
     /**
      * The {@link Machine} that this instance belongs to.
@@ -158,11 +242,76 @@ public class TransferSocket implements Comparable<TransferSocket> {
      */
     private final AtomicInteger machinePriority = new AtomicInteger();
 
+    /**
+     * The other side's challenge, decrypted during a full authentication, from which the session's secret is derived.
+     */
+    private volatile byte[] otherChallenge;
+
+    /**
+     * The session being resumed instead of authenticating fully, or null.
+     */
+    private volatile SessionTicket resumption;
+
+    /**
+     * This side's nonce for resuming the session.
+     */
+    private volatile byte[] resumptionNonce;
+
+    /**
+     * The connecting side's nonce for resuming the session, on the accepting side.
+     */
+    private volatile byte[] otherResumptionNonce;
+
+    /**
+     * The other side's identification, held by the connecting side until it knows if the session is resumed.
+     */
+    private volatile Runnable heldIdentification;
+
+    /**
+     * If the other side accepts compressed frames, held by the connecting side while resuming.
+     */
+    private volatile boolean otherCompression;
+
     /**
      * The {@link Consumer}s to run after authenticity has been established.
      */
     private final List<Consumer<TransferSocket>> postAuth = new ArrayList<>();
 
+    /**
+     * If both sides know that each other are authentic, guarded by {@code postAuth}.
+     */
+    private boolean mutuallyAuthenticated;
+
+    /**
+     * The task closing this connection if it is not authenticated within {@link TransferSocket#AUTHENTICATION_TIME}.
+     */
+    private final ScheduledFuture<?> authenticationTimeout;
+
+    /**
+     * The task sending heartbeats once authenticated, or null.
+     */
+    private volatile ScheduledFuture<?> heartbeatTask;
+
+    /**
+     * The {@link System#nanoTime()} bytes were last received at, for detecting a dead connection.
+     */
+    private volatile long lastReceiveTime = System.nanoTime();
+
+    /**
+     * If a frame is being handled on the read thread, which reads nothing until it returns.
+     */
+    private volatile boolean actingInline;
+
+    /**
+     * The round trip time measured by heartbeats.
+     */
+    private final RoundTripEstimator roundTrip = new RoundTripEstimator();
+
+    /**
+     * The future completed once this instance is closed.
+     */
+    private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+
     /**
      * The {@link Runnable} to run on close of this instance.
      */
@@ -176,113 +325,293 @@ public class TransferSocket implements Comparable<TransferSocket> {
      * @throws IOException if the {@link Socket} constructor throws an {@link IOException}.
      */
     public TransferSocket(Machine localMachine, String host, Integer port) throws IOException {
-        this(localMachine, new Socket(host, port), true);
+        this(localMachine, host, port, false);
+    }
+
+    /**
+     * Constructs a client socket instance for connecting to a server on the same host over a Unix domain socket file.
+     * <p>
+     * The connection is always served by an {@link EventLoop}, regardless of {@link Config#nonBlockingTransport}.
+     *
+     * @param localMachine the machine this instance belongs to.
+     * @param socketFile   the socket file the {@link Machine} to connect to accepts on.
+     * @throws IOException if the connection can not be made, or Unix domain sockets are not supported.
+     */
+    public TransferSocket(Machine localMachine, Path socketFile) throws IOException {
+        this(localMachine, new ChannelTransport(UnixDomainSockets.connect(socketFile), "unix:" + socketFile), true);
+    }
+
+    /**
+     * Constructs a client socket instance for connecting to a server.
+     *
+     * @param localMachine the machine this instance belongs to.
+     * @param host         the host address of the {@link Machine} to connect to.
+     * @param reconnecting if a {@link ReconnectingSocket} makes this connection again when it closes.
+     * @throws IOException if the {@link Socket} constructor throws an {@link IOException}.
+     */
+    TransferSocket(Machine localMachine, String host, Integer port, boolean reconnecting) throws IOException {
+        this(localMachine, connect(host, port), true, reconnecting);
     }
 
     /**
-     * Constructs a wrapper for a socket that has been accepted by a server.
+     * Makes the {@link Transport} to a server, in this program instance if {@link Config#loopbackTransport} is enabled.
+     *
+     * @param host the host address of the server, unused for {@link Config#loopbackTransport}.
+     * @param port the port of the server.
+     * @return the connected transport.
+     * @throws IOException if the connection can not be made.
+     */
+    private static Transport connect(String host, Integer port) throws IOException {
+        if (Config.loopbackTransport) return LoopbackTransport.connect(port);
+        return Config.nonBlockingTransport ? new ChannelTransport(SocketChannel.open(new InetSocketAddress(host, port))) : new StreamTransport(new Socket(host, port));
+    }
+
+    /**
+     * Constructs a wrapper for a transport that has been accepted by a server.
      *
      * @param localMachine the {@link Machine} this instance belongs to.
-     * @param socket       the accepted socket from a {@link SocketAcceptor}.
-     * @throws IOException if flushing or a stream throws an {@link IOException}.
+     * @param transport    the accepted transport from a {@link SocketAcceptor}.
+     */
+    TransferSocket(Machine localMachine, Transport transport, boolean masterServerSide) {
+        this(localMachine, transport, masterServerSide, false);
+    }
+
+    /**
+     * Constructs a wrapper for a transport.
+     *
+     * @param localMachine     the {@link Machine} this instance belongs to.
+     * @param transport        the connected transport.
+     * @param masterServerSide if the other side is a higher server.
+     * @param reconnecting     if a {@link ReconnectingSocket} makes this connection again when it closes.
      */
-    TransferSocket(Machine localMachine, Socket socket, boolean masterServerSide) throws IOException {
+    private TransferSocket(Machine localMachine, Transport transport, boolean masterServerSide, boolean reconnecting) {
         this.masterServerSide = masterServerSide;
+        this.reconnecting = reconnecting;
         this.localMachine = localMachine;
-        this.socket = socket;
-        this.outputStream = this.socket.getOutputStream();
-        this.outputStream.flush();
-        this.inputStream = this.socket.getInputStream();
-        try {
-            this.encryptionCipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            Log.ERROR.log("Invalid security settings", e);
-            throw new NoReturnException();
-        }
-        this.localMachine.runOnClose(this::close);
+        this.transport = transport;
+        if (masterServerSide && !reconnecting) this.localMachine.runOnClose(this::close);// others are closed by their SocketAcceptor or ReconnectingSocket
+        this.authenticationTimeout = TIMEOUTS.schedule(this::enforceAuthenticationTime, AUTHENTICATION_TIME, TimeUnit.MILLISECONDS);
         if (Config.authenticateMachines) {
             this.challenge = new byte[32];
             RANDOM.nextBytes(this.challenge);// This must occur before reading MachineActions
-            this.write(MachineAction.IDENTIFY_SELF, Config.selfCertificateSerial);
+            SessionTicket ticket = masterServerSide && Config.resumeSessions ? SessionTicket.getHeld(this.getConnectionName()) : null;
+            if (ticket == null) this.write(MachineAction.IDENTIFY_SELF, Config.selfCertificateSerial, Config.compressFrames);
+            else {// the accepting side still identifies it's self, which is held until the resumption is answered
+                this.resumption = ticket;
+                this.resumptionNonce = SessionTicket.newNonce();
+                this.write(MachineAction.RESUME_SESSION, ticket.getId(), this.resumptionNonce, Config.priority, Config.compressFrames);
+            }
         } else {
             this.challenge = null;
-            this.write(MachineAction.AFFIRM_NO_AUTHENTICATION, Config.priority);
-        }
-        ThreadMaker.getThread(ThreadMaker.NETWORK, "Transfer Socket Read Thread " + this.getConnectionName(), true, () -> {// constantly reads
-            boolean waitForMore = true;
-            int readSize, packageSize = -1;
-            byte[] buffer = new byte[1024];
-            ByteHandler pendingBytes = new ByteHandler();
-            MachineAction machineAction;
-            Object[] machineActionArgs;
-            while (!this.closed.get()) {
-                try {
-                    if (waitForMore) {// Wait for more data to complete a processing
-                        Log.TRACE.log("Waiting for more bytes from " + this.getConnectionName() + " with " + pendingBytes.size() + " extra bytes");
-                        readSize = this.inputStream.read(buffer);
-                        if (readSize == -1) {
-                            this.close();
-                            return;
-                        }
-                        pendingBytes.add(buffer, readSize);
-                    }
-                    if (packageSize == -1) {// Get the processing size
-                        if (pendingBytes.size() > Integer.BYTES) {
-                            packageSize = ObjectSerialization.deserialize(Integer.class, pendingBytes.getBytes(true, Integer.BYTES));
-                            pendingBytes.ensureCapacity(Math.min(packageSize, Integer.MAX_VALUE / 1000));// Just over 2MB
-                        } else {
-                            waitForMore = true;
-                            continue;
-                        }
-                    }
-                    if (pendingBytes.size() >= packageSize) {
-                        machineAction = MachineAction.values()[pendingBytes.get(0)];// the first byte determines the action
-                        if (machineAction.requiresAuthentication()) {
-                            if (!this.authenticated.get()) {// Basic authentication check
-                                Log.WARN.log("Connection from " + this.getConnectionName() + " attempted using authentication required MachineAction " + machineAction + " before being authenticated, dropping connection.");
-                                this.close();
-                                return;
-                            }// Best not to forget this part.
-                            if (!this.allowedMachineActions.contains(machineAction)) {// Check specific permissions
-                                Log.WARN.log("Connection from " + this.getConnectionName() + " attempted using MachineAction " + machineAction + " but does not have permssion to, dropping connection.");
-                                this.close();
-                                return;
-                            }
-                        }
-                        machineActionArgs = machineAction.read(this, pendingBytes);
-                        if (machineActionArgs == null) continue;// args incomplete, wait for more data
-                        Log.DEBUG.log("Received MachineAction of type " + machineAction + " from " + this.getConnectionName());
-                        machineAction.act(this, machineActionArgs);
-                        packageSize = -1;
-                        waitForMore = pendingBytes.isEmpty();
-                    } else waitForMore = true;
-                } catch (EOFException e) {
-                    Log.INFO.log("Opposite side closed " + this.getConnectionName());
+            this.write(MachineAction.AFFIRM_NO_AUTHENTICATION, Config.priority, Config.compressFrames);
+        }
+        this.transport.start(this);
+    }
+
+    /**
+     * Makes a {@link StringTable} for each {@link Lane}.
+     *
+     * @return a {@link StringTable} for each {@link Lane} by ordinal.
+     */
+    private static StringTable[] newStringTables() {
+        StringTable[] tables = new StringTable[Lane.values().length];
+        for (int i = 0; i < tables.length; i++) tables[i] = new StringTable();
+        return tables;
+    }
+
+    /**
+     * Gets the buffer the {@link Transport} writes received bytes to
+     * before calling {@link TransferSocket#receive()}.
+     *
+     * @return the buffer for received bytes.
+     */
+    ByteQueue getReceiveBuffer() {
+        return this.pendingBytes;
+    }
+
+    /**
+     * Processes the bytes received by the {@link Transport} into
+     * the receive buffer, splitting them into frames.
+     * <p>
+     * This is only called by one thread at a time and in the order the bytes were received.
+     */
+    void receive() {
+        this.lastReceiveTime = System.nanoTime();
+        Executor executor = this.transport.getActionExecutor();
+        while (!this.closed.get()) {
+            if (this.packageSize == -1) {// Get the processing size
+                if (this.pendingBytes.size() < Integer.BYTES) break;
+                int prefix = this.pendingBytes.peekInt();
+                this.pendingBytes.skip(Integer.BYTES);
+                this.packageSize = prefix & PendingWrite.LENGTH_MASK;
+                this.packageFlags = prefix & ~PendingWrite.LENGTH_MASK;
+                if (this.packageSize + this.pendingChunks.size() > Config.maximumFrameSize) {// before buffering any of it
+                    Log.WARN.log("Connection " + this.getConnectionName() + " sent a frame over the maximum size of " + Config.maximumFrameSize + " bytes, dropping connection.");
                     this.close();
-                } catch (SocketException e) {
-                    switch (e.getMessage()) {
-                        case "Connection reset":
-                            Log.INFO.log("Opposite side closed " + this.getConnectionName());
-                            this.close();
-                            break;
-                        case "Socket closed":
-                            if (!this.closed.get()) {
-                                Log.WARN.log("Opposite side unexpectedly closed connection", e);
-                                this.close();
-                            }
-                            break;
-                        case "Software caused connection abort: recv failed":
-                            Log.WARN.log("Software connection abort: recv failed, socket restart required");
-                            this.close();
-                        default:
-                            Log.WARN.log("Unable to handle SocketException, continuing as normal", e);
-                            break;
-                    }
-                } catch (IOException e) {
-                    Log.WARN.log("IOException receiving object", e);
+                    return;
+                }
+                this.pendingBytes.ensureWritable(this.packageSize - this.pendingBytes.size());// grow once for large frames
+            }
+            if (this.pendingBytes.size() < this.packageSize) {
+                Log.TRACE.log("Waiting for more bytes from " + this.getConnectionName() + " with " + this.pendingBytes.size() + " extra bytes");
+                return;
+            }
+            if ((this.packageFlags & PendingWrite.CHUNK_FLAG) == 0) this.dispatch(this.pendingBytes, this.packageSize, Lane.INTERACTIVE, executor);
+            else {
+                this.pendingChunks.ensureWritable(this.packageSize);
+                this.pendingBytes.take(this.pendingChunks.getArray(), this.pendingChunks.getWriteIndex(), this.packageSize);
+                this.pendingChunks.written(this.packageSize);
+                if ((this.packageFlags & PendingWrite.FINAL_FLAG) != 0) {
+                    this.dispatch(this.pendingChunks, this.pendingChunks.size(), Lane.BULK, executor);
+                    this.pendingChunks.trim();
                 }
             }
-        }).start();
+            this.packageSize = -1;
+        }
+        this.pendingBytes.trim();
+    }
+
+    /**
+     * Consumes a received frame and handles it on the {@code transport}'s action executor.
+     *
+     * @param source   the queue the frame is at the head of.
+     * @param size     the size of the frame.
+     * @param lane     the lane the frame was received on.
+     * @param executor the {@link Transport#getActionExecutor()}.
+     */
+    private void dispatch(ByteQueue source, int size, Lane lane, Executor executor) {
+        if (executor == null) {
+            this.actingInline = true;
+            try {
+                this.handleFrame(source.slice(size), lane);// the slice is valid until the next read
+            } finally {
+                this.lastReceiveTime = System.nanoTime();// frames that arrived during the action are not yet read
+                this.actingInline = false;
+            }
+        } else {
+            byte[] frame = BufferPool.acquire(size);
+            source.take(frame, 0, size);
+            executor.execute(() -> {
+                this.handleFrame(ByteBuffer.wrap(frame, 0, size), lane);
+                BufferPool.release(frame);
+            });
+        }
+    }
+
+    /**
+     * Checks the permission for and invokes the {@link MachineAction} of a single frame.
+     *
+     * @param frame the bytes of the frame.
+     * @param lane  the lane the frame was received on.
+     */
+    private void handleFrame(ByteBuffer frame, Lane lane) {
+        if (this.closed.get()) return;
+        int header = frame.get(frame.position()) & 0xFF;// the first byte determines the action
+        if (header == COMPRESSED_MARKER) {
+            this.handleCompressedFrame(frame, lane);
+            return;
+        }
+        if ((header & ORDINAL_MASK) >= MachineAction.values().length || (header & REQUEST_FLAG) != 0 && (header & RESPONSE_FLAG) != 0 || (header & (REQUEST_FLAG | RESPONSE_FLAG)) != 0 && frame.remaining() < 1 + Integer.BYTES) {
+            Log.WARN.log("Malformed frame header from " + this.getConnectionName() + ", dropping connection.");
+            this.close();
+            return;
+        }
+        MachineAction machineAction = MachineAction.values()[header & ORDINAL_MASK];
+        int correlationId = -1;
+        if ((header & (REQUEST_FLAG | RESPONSE_FLAG)) != 0) {// the correlation id trails the arguments
+            correlationId = frame.getInt(frame.limit() - Integer.BYTES);
+            frame.limit(frame.limit() - Integer.BYTES);
+        }
+        if (machineAction.requiresAuthentication()) {
+            if (!this.authenticated.get()) {// Basic authentication check
+                Log.WARN.log("Connection from " + this.getConnectionName() + " attempted using authentication required MachineAction " + machineAction + " before being authenticated, dropping connection.");
+                this.close();
+                return;
+            }// Best not to forget this part.
+            if (!this.allowedMachineActions.contains(machineAction)) {// Check specific permissions
+                Log.WARN.log("Connection from " + this.getConnectionName() + " attempted using MachineAction " + machineAction + " but does not have permssion to, dropping connection.");
+                this.close();
+                return;
+            }
+        }
+        Object[] machineActionArgs;
+        StringTable previous = StringTable.bind(this.inboundStrings[lane.ordinal()]);// frames are handled in order, as the table requires
+        try {
+            machineActionArgs = machineAction.read(this, frame);
+        } finally {
+            StringTable.bind(previous);
+        }
+        if (machineActionArgs == null) {
+            Log.WARN.log("Malformed frame for MachineAction " + machineAction + " from " + this.getConnectionName() + ", dropping connection.");
+            this.close();
+            return;
+        }
+        Log.DEBUG.log("Received MachineAction of type " + machineAction + " from " + this.getConnectionName());
+        if ((header & REQUEST_FLAG) != 0) this.actingRequestId = correlationId;
+        try {
+            machineAction.act(this, machineActionArgs);
+        } finally {
+            this.actingRequestId = -1;
+        }
+        if ((header & RESPONSE_FLAG) != 0) {
+            CompletableFuture<Object[]> request = this.pendingRequests.remove(correlationId);
+            if (request != null) request.complete(machineActionArgs);
+            else Log.DEBUG.log("Response to request " + correlationId + " from " + this.getConnectionName() + " arrived after it completed");
+        }
+    }
+
+    /**
+     * Inflates a frame compressed by {@link TransferSocket#compress(ByteBuffer, Lane)} and handles the original frame.
+     *
+     * @param frame the bytes of the compressed frame.
+     * @param lane  the lane the frame was received on.
+     */
+    private void handleCompressedFrame(ByteBuffer frame, Lane lane) {
+        int size = frame.remaining() < 1 + Integer.BYTES ? -1 : frame.getInt(frame.position() + 1);
+        if (!Config.compressFrames || size < 1 || size > Config.maximumFrameSize) {// compression was not advertised, or the size is impossible
+            Log.WARN.log("Malformed compressed frame from " + this.getConnectionName() + ", dropping connection.");
+            this.close();
+            return;
+        }
+        byte[] original = BufferPool.acquire(size);
+        try {
+            int inflated;
+            synchronized (this.inflater) {
+                if (this.closed.get()) return;
+                inflated = inflate(this.inflater, frame, original, size);
+            }
+            if (inflated != size || (original[0] & 0xFF) == COMPRESSED_MARKER) {
+                Log.WARN.log("Malformed compressed frame from " + this.getConnectionName() + ", dropping connection.");
+                this.close();
+                return;
+            }
+            this.handleFrame(ByteBuffer.wrap(original, 0, size), lane);
+        } catch (DataFormatException e) {
+            Log.WARN.log("Malformed compressed frame from " + this.getConnectionName() + ", dropping connection.", e);
+            this.close();
+        } finally {
+            BufferPool.release(original);
+        }
+    }
+
+    /**
+     * Inflates the body of a compressed frame.
+     *
+     * @param inflater the inflater to use, which is reset.
+     * @param frame    the compressed frame from it's marker byte, which is not consumed.
+     * @param original the array to inflate into, at least the original size long.
+     * @param size     the original size the frame claims.
+     * @return the number of bytes inflated, or -1 if the frame is truncated or longer than it claimed.
+     * @throws DataFormatException if the compressed data is malformed.
+     */
+    static int inflate(Inflater inflater, ByteBuffer frame, byte[] original, int size) throws DataFormatException {
+        int inflated = 0;
+        inflater.reset();
+        inflater.setInput(frame.array(), frame.arrayOffset() + frame.position() + 1 + Integer.BYTES, frame.remaining() - 1 - Integer.BYTES);
+        while (inflated < size && !inflater.finished() && !inflater.needsInput()) {
+            inflated += inflater.inflate(original, inflated, size - inflated);
+        }
+        return inflater.finished() ? inflated : -1;
     }
 
     /**
@@ -295,38 +624,202 @@ public class TransferSocket implements Comparable<TransferSocket> {
     }
 
     /**
-     * Writes a {@link MachineAction} command to the stream.
+     * Queues a {@link MachineAction} command to be written to the connection without blocking.
+     * <p>
+     * Commands are written in the order they are queued.
      *
      * @param action the action to preform.
      * @param args   the arguments for the action.
+     * @return a future completed when the command has been written, or completed exceptionally if it is dropped.
+     */
+    public CompletableFuture<Void> write(MachineAction action, Object... args) {
+        return this.write(0, -1, null, 0, 0, action, args);
+    }
+
+    /**
+     * Sends a {@link MachineAction} as a request, which the other side answers with {@link TransferSocket#respond(int, MachineAction, Object...)}.
+     * <p>
+     * The response's {@link MachineAction} is acted upon as usual before the future
+     * completes, so several requests to the same connection may be outstanding at once.
+     *
+     * @param timeout the milliseconds to wait for the response before completing exceptionally with a {@link TimeoutException}.
+     * @param action  the action to request.
+     * @param args    the arguments for the action.
+     * @return a future completed with the arguments of the response, including any {@link TransferSocket}.
      */
-    public void write(MachineAction action, Object... args) {
+    public CompletableFuture<Object[]> request(long timeout, MachineAction action, Object... args) {
+        int requestId = this.nextRequestId.getAndIncrement() & Integer.MAX_VALUE;
+        CompletableFuture<Object[]> response = new CompletableFuture<>();
+        this.pendingRequests.put(requestId, response);
+        ScheduledFuture<?> timeoutTask = TIMEOUTS.schedule(() -> {
+            if (this.pendingRequests.remove(requestId, response))
+                response.completeExceptionally(new TimeoutException("No response to " + action + " from " + this.getConnectionName() + " in " + timeout + "ms"));
+        }, timeout, TimeUnit.MILLISECONDS);
+        response.whenComplete((objects, throwable) -> timeoutTask.cancel(false));
+        this.write(REQUEST_FLAG, requestId, null, 0, 0, action, args).whenComplete((ignored, throwable) -> {
+            if (throwable != null && this.pendingRequests.remove(requestId, response)) response.completeExceptionally(throwable);
+        });
+        return response;
+    }
+
+    /**
+     * Gets the correlation id of the request being acted upon, to respond to it.
+     * <p>
+     * This is only valid on the thread acting, during the action.
+     *
+     * @return the correlation id of the request being acted upon, or -1 if it is not a request.
+     */
+    public int getRequestId() {
+        return this.actingRequestId;
+    }
+
+    /**
+     * Sends a {@link MachineAction} as the response to a request from the other side.
+     *
+     * @param requestId the correlation id of the request from {@link TransferSocket#getRequestId()},
+     *                  if -1 this is written without being a response.
+     * @param action    the action to respond with.
+     * @param args      the arguments for the action.
+     * @return a future completed when the command has been written, or completed exceptionally if it is dropped.
+     */
+    public CompletableFuture<Void> respond(int requestId, MachineAction action, Object... args) {
+        return requestId == -1 ? this.write(action, args) : this.write(RESPONSE_FLAG, requestId, null, 0, 0, action, args);
+    }
+
+    /**
+     * Queues a {@link Lane#BULK} {@link MachineAction} command whose last argument,
+     * a {@link ByteBuffer}, is the contents of a region of a file, to be written to the connection without blocking.
+     * <p>
+     * The region is not read onto the heap, the {@link Transport} writes it
+     * to the connection straight from the file where it is able to.
+     * The channel must stay open until the returned future completes.
+     *
+     * @param action   the action to preform.
+     * @param channel  the file to write the region of.
+     * @param position the index in the file of the region.
+     * @param length   the number of bytes of the region.
+     * @param args     the arguments for the action, excluding the last.
+     * @return a future completed when the command has been written, or completed exceptionally if it is dropped.
+     */
+    public CompletableFuture<Void> writeFile(MachineAction action, FileChannel channel, long position, long length, Object... args) {
+        if (action.getLane() != Lane.BULK) throw new IllegalArgumentException("File regions may only be written for BULK actions, not " + action);
+        Object[] arguments = Arrays.copyOf(args, args.length + 1);
+        arguments[args.length] = ByteBuffer.allocate(0);// stands in for the region
+        return this.write(0, -1, channel, position, length, action, arguments);
+    }
+
+    /**
+     * Queues a {@link MachineAction} frame with header flags to be written.
+     *
+     * @param flags          the flags of the frame's first byte.
+     * @param correlationId  the correlation id if either flag is set.
+     * @param region         the file with the contents of the last {@link ByteBuffer} argument, or null.
+     * @param regionPosition the index in the file of the contents.
+     * @param regionLength   the number of bytes of the contents.
+     * @param action         the action to preform.
+     * @param args           the arguments for the action.
+     * @return a future completed when the command has been written, or completed exceptionally if it is dropped.
+     */
+    private CompletableFuture<Void> write(int flags, int correlationId, FileChannel region, long regionPosition, long regionLength, MachineAction action, Object... args) {
         if (this.closed.get()) {
             if (action != MachineAction.CLOSE_ALL)
                 Log.WARN.log("MachineAction dropped of type " + action + " to " + this.getConnectionName() + " due to close");// drop if everything is closing
-            return;
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new ClosedChannelException());
+            return future;
         }
-        try {
-            this.write(action.write(args));
-            Log.DEBUG.log("Flushed MachineAction of type " + action + " to " + this.getConnectionName());
-        } catch (IOException e) {
-            if (action != MachineAction.CLOSE_ALL)
-                Log.WARN.log("IOException flushing MachineAction of type " + action + " to " + this.getConnectionName(), e);
-        }// drop if everything is closing
+        PendingWrite write;
+        StringTable strings = this.outboundStrings[action.getLane().ordinal()];
+        synchronized (strings) {// frames must be queued in the order they use the table
+            StringTable previous = StringTable.bind(strings);
+            int mark = strings.mark();
+            ByteBuffer frame = null;
+            try {
+                int size = action.size(args);
+                frame = ByteBuffer.wrap(BufferPool.acquire(Integer.BYTES + size + Integer.BYTES));
+                frame.position(Integer.BYTES);
+                action.write(frame, args);// encoded straight into the outbound frame
+                if (flags != 0) {
+                    frame.put(Integer.BYTES, (byte) (frame.get(Integer.BYTES) | flags));
+                    frame.putInt(correlationId);
+                }
+                if (region != null) frame.putInt(frame.position() - Integer.BYTES, (int) regionLength);// the length of the empty last argument
+                frame.putInt(0, (int) (frame.position() - Integer.BYTES + regionLength));
+                frame.flip();
+                if (this.compressOutbound && region == null && !this.closed.get() && frame.remaining() - Integer.BYTES >= Config.compressionThreshold) frame = this.compress(frame, action.getLane());
+                write = region == null ? new PendingWrite(frame) : new PendingWrite(frame, region, regionPosition, regionLength);
+            } catch (RuntimeException e) {// the other side never sees the strings this added
+                strings.rollback(mark);
+                if (frame != null) BufferPool.release(frame.array());
+                Log.ERROR.log("Exception encoding MachineAction of type " + action + " to " + this.getConnectionName(), e);
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            } finally {
+                StringTable.bind(previous);
+            }
+            this.writeQueue.add(write, action.getLane());
+        }
+        if (this.closed.get()) this.failPendingWrites();// raced close
+        else this.transport.scheduleWrite();
+        Log.DEBUG.log("Queued MachineAction of type " + action + " to " + this.getConnectionName());
+        return write.getFuture();
     }
 
     /**
-     * Writes the bytes provided to the stream after encrypting them.
+     * Compresses a frame, releasing it, or returns it unchanged if compressing does not make it smaller.
+     * <p>
+     * This must only be called while holding the lane's {@code outboundStrings} table.
+     *
+     * @param frame the frame, including it's length prefix.
+     * @param lane  the lane the frame is written on.
+     * @return the frame to write.
+     */
+    private ByteBuffer compress(ByteBuffer frame, Lane lane) {
+        Deflater deflater = this.deflaters[lane.ordinal()];
+        if (deflater == null) this.deflaters[lane.ordinal()] = deflater = new Deflater(Deflater.BEST_SPEED);
+        return compress(deflater, frame);
+    }
+
+    /**
+     * Compresses a frame with a deflater, releasing it, or returns it unchanged if compressing does not make it smaller.
      *
-     * @param bytes the bytes to write to the stream.
-     * @throws IOException if there are problems writing to the stream.
+     * @param deflater the deflater to use, which is reset.
+     * @param frame    the frame, including it's length prefix, in an array from the {@link BufferPool}.
+     * @return the frame to write.
      */
-    private void write(byte... bytes) throws IOException {
-        synchronized (this) {
-            this.outputStream.write(ObjectSerialization.serialize(Integer.class, bytes.length));
-            this.outputStream.write(bytes);
-            this.outputStream.flush();
+    static ByteBuffer compress(Deflater deflater, ByteBuffer frame) {
+        int size = frame.remaining() - Integer.BYTES;
+        deflater.reset();
+        deflater.setInput(frame.array(), Integer.BYTES, size);
+        deflater.finish();
+        byte[] compressed = BufferPool.acquire(Integer.BYTES + size);// pooled lengths may be less than this
+        int length = 1 + Integer.BYTES;
+        while (!deflater.finished() && length < size) length += deflater.deflate(compressed, Integer.BYTES + length, size - length);
+        if (!deflater.finished()) {// at least as large as the original
+            BufferPool.release(compressed);
+            return frame;
         }
+        BufferPool.release(frame.array());
+        ByteBuffer buffer = ByteBuffer.wrap(compressed, 0, Integer.BYTES + length);
+        buffer.putInt(0, length).put(Integer.BYTES, (byte) COMPRESSED_MARKER).putInt(Integer.BYTES + 1, size);
+        return buffer;
+    }
+
+    /**
+     * Gets the queue of frames waiting to be written by the {@link Transport}.
+     *
+     * @return the queue of frames waiting to be written.
+     */
+    WriteQueue getWriteQueue() {
+        return this.writeQueue;
+    }
+
+    /**
+     * Completes all queued writes exceptionally, used on close.
+     */
+    private void failPendingWrites() {
+        this.writeQueue.failAll(new ClosedChannelException());
     }
 
     /**
@@ -339,7 +832,7 @@ public class TransferSocket implements Comparable<TransferSocket> {
      * @return a human readable representation for identifying the connected machine.
      */
     public String getConnectionName() {
-        return this.socket.getRemoteSocketAddress().toString();
+        return this.transport.getRemoteName();
     }
 
     /**
@@ -356,21 +849,115 @@ public class TransferSocket implements Comparable<TransferSocket> {
      */
     public void close() {
         if (this.closed.getAndSet(true)) return;// Atomic
+        this.authenticationTimeout.cancel(false);
+        ScheduledFuture<?> heartbeatTask = this.heartbeatTask;
+        if (heartbeatTask != null) heartbeatTask.cancel(false);
         this.getLocalMachine().deregisterSocket(this);
         if (this.onCloseReference.get() != null) this.onCloseReference.get().run();
         try {
-            this.inputStream.close();
-            this.outputStream.close();
-            this.socket.close();
+            this.transport.close();
         } catch (IOException e) {
             Log.ERROR.log("IOException closing socket to " + this.getConnectionName(), e);
         }
-        if (this.masterServerSide) {
+        this.failPendingWrites();
+        for (Lane lane : Lane.values()) {
+            synchronized (this.outboundStrings[lane.ordinal()]) {// not while compressing
+                if (this.deflaters[lane.ordinal()] != null) this.deflaters[lane.ordinal()].end();
+            }
+        }
+        synchronized (this.inflater) {
+            this.inflater.end();
+        }
+        this.pendingRequests.keySet().forEach(requestId -> {
+            CompletableFuture<Object[]> request = this.pendingRequests.remove(requestId);
+            if (request != null) request.completeExceptionally(new ClosedChannelException());
+        });
+        if (this.masterServerSide && !this.reconnecting) {
             Log.WARN.log("Closing machine due to closing connection to higher server");
             this.getLocalMachine().close();
+        } else if (this.masterServerSide && !this.getLocalMachine().closing()) {
+            Log.WARN.log("Lost connection to higher server " + this.getConnectionName());
         } else {
             Log.INFO.log("Closed socket to " + this.getConnectionName());
         }
+        this.closeFuture.complete(null);
+    }
+
+    /**
+     * Gets a future completed once this instance is closed.
+     *
+     * @return a future completed once this instance is closed.
+     */
+    public CompletableFuture<Void> getCloseFuture() {
+        return this.closeFuture;
+    }
+
+    /**
+     * Closes this connection if it has not authenticated in time,
+     * rather than waiting for it to send {@link MachineAction#AUTHENTICATE}.
+     */
+    private void enforceAuthenticationTime() {
+        synchronized (this.postAuth) {
+            if (this.mutuallyAuthenticated) return;
+        }
+        Log.WARN.log("Connection " + this.getConnectionName() + " did not authenticate within " + AUTHENTICATION_TIME + "ms, closing connection");
+        this.close();
+    }
+
+    /**
+     * Sends a heartbeat, or closes this connection if nothing has been received
+     * for {@link Config#heartbeatMissLimit} heartbeat intervals.
+     * <p>
+     * Silence is not counted while a frame is handled on the read thread,
+     * since the other side's heartbeats wait unread until the action returns.
+     */
+    private void sendHeartbeat() {
+        long silence = System.nanoTime() - this.lastReceiveTime;
+        if (!this.actingInline && silence > TimeUnit.MILLISECONDS.toNanos(Config.heartbeatInterval * Config.heartbeatMissLimit)) {
+            Log.WARN.log("Connection " + this.getConnectionName() + " sent nothing for " + TimeUnit.NANOSECONDS.toMillis(silence) + "ms, closing connection as dead");
+            this.close();
+        } else this.write(MachineAction.HEARTBEAT, System.nanoTime());
+    }
+
+    /**
+     * Returns the clock of a heartbeat to the other side.
+     *
+     * @param time the other side's clock when it sent the heartbeat.
+     * @see MachineAction#HEARTBEAT
+     */
+    @Action(MachineAction.HEARTBEAT)
+    public void heartbeat(Long time) {
+        this.write(MachineAction.HEARTBEAT_ECHO, time);
+    }
+
+    /**
+     * Measures the round trip time of a heartbeat this side sent.
+     *
+     * @param time this side's clock when it sent the heartbeat.
+     * @see MachineAction#HEARTBEAT_ECHO
+     */
+    @Action(MachineAction.HEARTBEAT_ECHO)
+    public void heartbeatEcho(Long time) {
+        long roundTrip = System.nanoTime() - time;
+        if (roundTrip >= 0) this.roundTrip.sample(roundTrip);// a clock that was not sent by this side is ignored
+    }
+
+    /**
+     * Gets the smoothed round trip time to the other side, measured by heartbeats.
+     *
+     * @return the round trip time in nanoseconds, or -1 if it has not been measured.
+     */
+    public long getRoundTripTime() {
+        return this.roundTrip.getRoundTripTime();
+    }
+
+    /**
+     * Gets the smoothed variation of the round trip time to the other side, measured by heartbeats.
+     *
+     * @return the jitter in nanoseconds, or -1 if it has not been measured.
+     */
+    public long getRoundTripJitter() {
+        return this.roundTrip.getJitter();
     }
 
     public boolean isClosed() {
@@ -378,9 +965,10 @@ public class TransferSocket implements Comparable<TransferSocket> {
     }
 
     @Action(MachineAction.AFFIRM_NO_AUTHENTICATION)
-    public void affirmNoAuthentication(Integer priority) {
+    public void affirmNoAuthentication(Integer priority, Boolean compression) {
         if (this.authenticated.get()) return;
         this.machinePriority.set(priority);
+        this.compressOutbound = Config.compressFrames && compression;
         if (Config.authenticateMachines) {
             Log.WARN.log("Machine " + this.getConnectionName() + " requested an affirmation of no authentication with authentication required");
             this.close();
@@ -409,7 +997,7 @@ public class TransferSocket implements Comparable<TransferSocket> {
 
     @Action(MachineAction.AUTHENTICATE_WITH_TEMPORARY_CODE)
     public void authenticateWithTemporaryCode(String code) {
-        if (CODES.remove(code)) {
+        if (CODES.use(code)) {
             this.allowedMachineActions.addAll(EnumSet.allOf(MachineAction.class));
             this.authenticateThis();// todo restrict permissions on this, a lot.
             this.authenticateOther();
@@ -427,11 +1015,65 @@ public class TransferSocket implements Comparable<TransferSocket> {
     @Action(MachineAction.SEND_CERTIFICATE)
     public void sendCertificate(Certificate certificate) {
         // Certificate is registered in constructor of Certificate, so no action with it directly is required
-        this.certificateReceiveActions.remove(certificate.getSerialNumber()).forEach(Runnable::run);
+        this.certificateReceived(certificate);
+    }
+
+    /**
+     * Sends the certificate with the serial number and each of it's ancestors this machine has, in one frame.
+     *
+     * @param serial the serial number of the first certificate of the chain.
+     * @see MachineAction#REQUEST_CERTIFICATE_CHAIN
+     */
+    @Action(MachineAction.REQUEST_CERTIFICATE_CHAIN)
+    public void requestCertificateChain(BigInteger serial) {
+        List<Certificate> chain = new ArrayList<>();
+        Certificate certificate = Certificate.getCertificate(serial);
+        while (certificate != null && chain.size() < MAXIMUM_CHAIN_LENGTH) {
+            chain.add(certificate);
+            BigInteger parentSerial = certificate.getParentSerialNumber();
+            certificate = parentSerial == null ? null : Certificate.getCertificate(parentSerial);
+        }
+        this.write(MachineAction.SEND_CERTIFICATE_CHAIN, (Object) chain.toArray(new Certificate[0]));
+    }
+
+    /**
+     * Receives a certificate chain requested for identification, continuing the identification.
+     *
+     * @param chain the certificate and it's ancestors, or empty if the other side does not have it.
+     * @see MachineAction#SEND_CERTIFICATE_CHAIN
+     */
+    @Action(MachineAction.SEND_CERTIFICATE_CHAIN)
+    public void sendCertificateChain(Certificate[] chain) {
+        if (chain.length == 0) {
+            Log.WARN.log("Machine " + this.getConnectionName() + " could not provide the certificate chain it identified with, closing connection");
+            this.close();
+            return;
+        }
+        if (chain.length > MAXIMUM_CHAIN_LENGTH) {
+            Log.WARN.log("Machine " + this.getConnectionName() + " sent a certificate chain of " + chain.length + " certificates, closing connection");
+            this.close();
+            return;
+        }
+        for (Certificate certificate : chain) this.certificateReceived(certificate);// the whole chain was cached as it was decoded
+    }
+
+    /**
+     * Runs the actions waiting for a certificate.
+     *
+     * @param certificate the received certificate.
+     */
+    private void certificateReceived(Certificate certificate) {
+        List<Runnable> actions = this.certificateReceiveActions.remove(certificate.getSerialNumber());
+        if (actions != null) actions.forEach(Runnable::run);
     }
 
     @Action(MachineAction.IDENTIFY_SELF)
-    public void identifySelf(BigInteger otherCertificateSerial) {// sending the serial number makes non-super server
+    public void identifySelf(BigInteger otherCertificateSerial, Boolean compression) {// sending the serial number makes non-super server
+        if (this.masterServerSide && this.resumption != null) {// only needed if the session is not resumed
+            this.otherCompression = compression;
+            this.heldIdentification = () -> this.identifySelf(otherCertificateSerial, compression);
+            return;
+        }
         if (this.otherCertificate.get() != null) {
             Log.WARN.log("Machine " + this.getConnectionName() + " attempted to re-identify it's self");
             this.close();
@@ -445,8 +1087,10 @@ public class TransferSocket implements Comparable<TransferSocket> {
         BigInteger certificateSerial = otherCertificateSerial;
         Certificate current;
         while (certificateSerial != null) {
-            if ((current = Certificate.getCertificate(certificateSerial)) == null) {
-                this.certificateReceiveActions.computeIfAbsent(certificateSerial, bigInteger -> new ArrayList<>()).add(() -> identifySelf(otherCertificateSerial));
+            if ((current = Certificate.getCertificate(certificateSerial)) == null) {// the rest of the chain is fetched at once
+                List<Runnable> actions = this.certificateReceiveActions.computeIfAbsent(certificateSerial, bigInteger -> new ArrayList<>());
+                if (actions.isEmpty()) this.write(MachineAction.REQUEST_CERTIFICATE_CHAIN, certificateSerial);
+                actions.add(() -> identifySelf(otherCertificateSerial, compression));
                 return;
             }
             certificateSerial = current.getParentSerialNumber();
@@ -459,17 +1103,17 @@ public class TransferSocket implements Comparable<TransferSocket> {
             this.close();
             return;
         }
+        byte[] encryptedChallenge;
         try {
-            this.encryptionCipher.init(Cipher.ENCRYPT_MODE, otherCertificate.getPublicKey());
-        } catch (InvalidKeyException e) {
+            encryptedChallenge = HandshakeCrypto.encrypt(otherCertificate.getPublicKey(), this.challenge);
+        } catch (GeneralSecurityException e) {
             Log.WARN.log("Machine claiming to be " + otherCertificate.getSubjectName() + " had invalid key, closing connection", e);
+            this.close();
+            return;
         }
         this.otherCertificate.set(otherCertificate);
-        try {
-            this.write(MachineAction.REQUEST_AUTHENTICATION, this.encryptionCipher.doFinal(this.challenge), Config.priority);
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
-            Log.ERROR.log("Unable to encrypt challenge", e);
-        }
+        this.compressOutbound = Config.compressFrames && compression;
+        this.write(MachineAction.REQUEST_AUTHENTICATION, encryptedChallenge, Config.priority);
     }
 
     /**
@@ -486,11 +1130,17 @@ public class TransferSocket implements Comparable<TransferSocket> {
         if (Config.privateKey == null) {// no way to decrypt, cipher not initialized
             Log.ERROR.log("Unable to authenticate without a private key");
         }
+        if (this.otherCertificate.get() == null) {
+            Log.WARN.log("Machine " + this.getConnectionName() + " requested authentication before identifying it's self, closing connection");
+            this.close();
+            return;
+        }
         this.machinePriority.set(priority);
         try {
-            this.write(MachineAction.AUTHENTICATE, this.encryptionCipher.doFinal(DECRYPTION_CIPHER.doFinal(encryptedChallenge)), true);
+            this.otherChallenge = HandshakeCrypto.decrypt(encryptedChallenge);
+            this.write(MachineAction.AUTHENTICATE, HandshakeCrypto.encrypt(this.otherCertificate.get().getPublicKey(), this.otherChallenge), true);
             this.authenticateOther();
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
+        } catch (GeneralSecurityException e) {
             Log.WARN.log("Machine claiming to be " + this.otherCertificate.get().getSubjectName() + " failed authentication early", e);
             this.close();
         }
@@ -510,7 +1160,7 @@ public class TransferSocket implements Comparable<TransferSocket> {
                 Log.WARN.log("Connection from " + this.getConnectionName() + " failed authentication with time out, " + (System.currentTimeMillis() - this.authenticationStartTime) + "ms too long");
             } else if (!authenticate) {
                 Log.WARN.log("Connection from " + this.getConnectionName() + " failed authentication with authentication wish being false");
-            } else if (!Arrays.equals(DECRYPTION_CIPHER.doFinal(encryptedChallengeResponse), this.challenge)) {
+            } else if (!Arrays.equals(HandshakeCrypto.decrypt(encryptedChallengeResponse), this.challenge)) {
                 Log.WARN.log("Connection from " + this.getConnectionName() + " failed authentication with incorrect challenge response");
             } else {
                 this.allowedMachineActions.addAll(this.otherCertificate.get().allowedActions());
@@ -518,12 +1168,143 @@ public class TransferSocket implements Comparable<TransferSocket> {
                 Log.INFO.log("Connection from " + this.getConnectionName() + " authenticated");
                 return;
             }
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
+        } catch (GeneralSecurityException e) {
             Log.WARN.log("Connection from " + this.getConnectionName() + " failed authentication with bad padding", e);
         }
         this.close();
     }
 
+    /**
+     * Resumes a session from an earlier full authentication, on the accepting side,
+     * by proving this side holds the session's secret for the connecting side's nonce.
+     * <p>
+     * An empty proof is sent if the ticket is unknown or expired, after which the connecting side authenticates fully.
+     *
+     * @param ticketId    the id of the ticket issued by this machine.
+     * @param nonce       the connecting side's nonce.
+     * @param priority    the other machine priority.
+     * @param compression if the other side accepts compressed frames.
+     * @see MachineAction#RESUME_SESSION
+     */
+    @Action(MachineAction.RESUME_SESSION)
+    public void resumeSession(String ticketId, byte[] nonce, Integer priority, Boolean compression) {
+        if (this.masterServerSide || !Config.authenticateMachines || this.authenticated.get() || this.otherCertificate.get() != null || this.resumption != null) {
+            Log.WARN.log("Machine " + this.getConnectionName() + " attempted to resume a session out of order, closing connection");
+            this.close();
+            return;
+        }
+        SessionTicket ticket = Config.resumeSessions ? SessionTicket.getIssued(ticketId) : null;
+        byte[] acceptingNonce = SessionTicket.newNonce();
+        if (ticket == null || nonce.length != SessionTicket.NONCE_SIZE) {
+            Log.DEBUG.log("Machine " + this.getConnectionName() + " presented an unknown session ticket, requiring full authentication");
+            this.write(MachineAction.RESUMPTION_CHALLENGE, acceptingNonce, new byte[0], Config.priority);
+            return;
+        }
+        this.machinePriority.set(priority);
+        this.compressOutbound = Config.compressFrames && compression;
+        this.otherResumptionNonce = nonce;
+        this.resumptionNonce = acceptingNonce;
+        this.resumption = ticket;
+        this.write(MachineAction.RESUMPTION_CHALLENGE, acceptingNonce, ticket.prove(true, nonce, acceptingNonce), Config.priority);
+    }
+
+    /**
+     * Checks the accepting side's proof of the session's secret, on the connecting side,
+     * then proves this side holds it, or authenticates fully if the session can not be resumed.
+     *
+     * @param nonce    the accepting side's nonce.
+     * @param proof    the accepting side's proof, or empty if it can not resume the session.
+     * @param priority the other machine priority.
+     * @see MachineAction#RESUMPTION_CHALLENGE
+     */
+    @Action(MachineAction.RESUMPTION_CHALLENGE)
+    public void resumptionChallenge(byte[] nonce, byte[] proof, Integer priority) {
+        SessionTicket ticket = this.resumption;
+        if (!this.masterServerSide || ticket == null) {
+            Log.WARN.log("Machine " + this.getConnectionName() + " answered a session resumption that was not requested, closing connection");
+            this.close();
+            return;
+        }
+        this.resumption = null;
+        if (proof.length == 0 || !ticket.isTrusted()) {
+            Log.INFO.log("Session ticket rejected by " + this.getConnectionName() + " or it's certificate is no longer valid, authenticating fully");
+            SessionTicket.forget(this.getConnectionName(), ticket);
+            this.write(MachineAction.IDENTIFY_SELF, Config.selfCertificateSerial, Config.compressFrames);
+            Runnable identification = this.heldIdentification;
+            this.heldIdentification = null;
+            if (identification != null) identification.run();
+            return;
+        }
+        if (!ticket.check(true, proof, this.resumptionNonce, nonce)) {
+            Log.WARN.log("Machine " + this.getConnectionName() + " failed to prove it holds the session being resumed, closing connection");
+            SessionTicket.forget(this.getConnectionName(), ticket);
+            this.close();
+            return;
+        }
+        this.heldIdentification = null;
+        this.machinePriority.set(priority);
+        this.compressOutbound = Config.compressFrames && this.otherCompression;
+        this.otherCertificate.set(ticket.getCertificate());
+        this.allowedMachineActions.addAll(ticket.getPermissions());
+        this.write(MachineAction.RESUMPTION_PROOF, ticket.prove(false, this.resumptionNonce, nonce));
+        this.authenticateThis();
+        this.authenticateOther();
+        Log.INFO.log("Connection to " + this.getConnectionName() + " resumed it's session");
+    }
+
+    /**
+     * Checks the connecting side's proof of the session's secret, on the accepting side, completing the resumption.
+     *
+     * @param proof the connecting side's proof.
+     * @see MachineAction#RESUMPTION_PROOF
+     */
+    @Action(MachineAction.RESUMPTION_PROOF)
+    public void resumptionProof(byte[] proof) {
+        SessionTicket ticket = this.resumption;
+        if (this.masterServerSide || ticket == null) {
+            Log.WARN.log("Machine " + this.getConnectionName() + " sent a session resumption proof that was not requested, closing connection");
+            this.close();
+            return;
+        }
+        this.resumption = null;
+        if (!ticket.check(false, proof, this.otherResumptionNonce, this.resumptionNonce)) {
+            Log.WARN.log("Connection from " + this.getConnectionName() + " failed to prove it holds the session being resumed, closing connection");
+            this.close();
+            return;
+        }
+        if (!ticket.isTrusted()) {// revoked since the resumption began, the next connection authenticates fully
+            Log.WARN.log("Connection from " + this.getConnectionName() + " resumed a session for a certificate which is no longer valid, closing connection");
+            this.close();
+            return;
+        }
+        this.otherCertificate.set(ticket.getCertificate());
+        this.allowedMachineActions.addAll(ticket.getPermissions());
+        this.authenticateThis();
+        this.authenticateOther();
+        Log.INFO.log("Connection from " + this.getConnectionName() + " resumed it's session");
+    }
+
+    /**
+     * Holds a ticket for resuming this session, on the connecting side after a full authentication.
+     *
+     * @param ticketId the id of the ticket.
+     * @param lifetime the milliseconds the ticket may be used for.
+     * @see MachineAction#SESSION_TICKET
+     */
+    @Action(MachineAction.SESSION_TICKET)
+    public void sessionTicket(String ticketId, Long lifetime) {
+        byte[] otherChallenge = this.otherChallenge;
+        if (!this.masterServerSide || !this.authenticated.get() || otherChallenge == null) {
+            Log.WARN.log("Machine " + this.getConnectionName() + " issued a session ticket without a full authentication, closing connection");
+            this.close();
+            return;
+        }
+        if (!Config.resumeSessions) return;
+        byte[] secret = SessionTicket.deriveSecret(otherChallenge, this.challenge);
+        long expiry = System.currentTimeMillis() + Math.min(lifetime, Config.sessionTicketLifetime);
+        SessionTicket.hold(this.getConnectionName(), new SessionTicket(ticketId, secret, expiry, this.otherCertificate.get(), this.allowedMachineActions));
+    }
+
     /**
      * Registers an action to be done when this socket is authenticated,
      * or immediately if already authenticated.
@@ -531,8 +1312,13 @@ public class TransferSocket implements Comparable<TransferSocket> {
      * @param consumer the action to do when authenticated.
      */
     public void registerAuthenticationAction(Consumer<TransferSocket> consumer) {
-        if (this.otherAuthenticated.get() && this.authenticated.get()) consumer.accept(this);
-        else this.postAuth.add(consumer);
+        synchronized (this.postAuth) {// authentication may complete on another thread
+            if (!this.mutuallyAuthenticated) {
+                this.postAuth.add(consumer);
+                return;
+            }
+        }
+        consumer.accept(this);
     }
 
     /**
@@ -557,10 +1343,25 @@ public class TransferSocket implements Comparable<TransferSocket> {
      * Processes when both sides know that each other are authentic.
      */
     private void mutualAuthentication() {
+        List<Consumer<TransferSocket>> actions;
+        synchronized (this.postAuth) {
+            if (this.mutuallyAuthenticated) return;// both sides of the authentication may finish at once
+            this.mutuallyAuthenticated = true;
+            actions = new ArrayList<>(this.postAuth);
+            this.postAuth.clear();
+        }
+        this.authenticationTimeout.cancel(false);
         this.certificateReceiveActions.clear();
+        if (!this.masterServerSide && this.otherChallenge != null && Config.resumeSessions) {// after a full authentication
+            SessionTicket ticket = SessionTicket.issue(SessionTicket.deriveSecret(this.challenge, this.otherChallenge), this.otherCertificate.get(), this.allowedMachineActions);
+            this.write(MachineAction.SESSION_TICKET, ticket.getId(), Config.sessionTicketLifetime);
+        }
         this.localMachine.registerSocket(this);
-        this.postAuth.forEach(consumer -> consumer.accept(this));
-        this.postAuth.clear();
+        if (Config.heartbeatInterval > 0) {
+            this.heartbeatTask = TIMEOUTS.scheduleAtFixedRate(this::sendHeartbeat, Config.heartbeatInterval, Config.heartbeatInterval, TimeUnit.MILLISECONDS);
+            if (this.closed.get()) this.heartbeatTask.cancel(false);// raced close
+        }
+        actions.forEach(consumer -> consumer.accept(this));
     }
 
     @Override
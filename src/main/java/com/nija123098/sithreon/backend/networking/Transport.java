@@ -0,0 +1,54 @@
+package com.nija123098.sithreon.backend.networking;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * The byte level connection a {@link TransferSocket} sends and receives frames through.
+ * <p>
+ * A transport writes received bytes to {@link TransferSocket#getReceiveBuffer()} then
+ * calls {@link TransferSocket#receive()}, in order and from a single thread at a time.
+ *
+ * @author nija123098
+ */
+interface Transport {
+    /**
+     * Starts delivering received bytes to the provided {@link TransferSocket}.
+     *
+     * @param socket the {@link TransferSocket} to deliver bytes to.
+     */
+    void start(TransferSocket socket);
+
+    /**
+     * Notifies the transport that frames are waiting in the {@link TransferSocket#getWriteQueue()}.
+     * <p>
+     * This must not block, the transport writes the queued frames in order on it's own
+     * thread, coalescing frames that are waiting together and flushing once the queue is empty.
+     */
+    void scheduleWrite();
+
+    /**
+     * Gets the {@link Executor} to run received {@link MachineAction}s on.
+     * <p>
+     * The {@link Executor} must run tasks in the order they are submitted.
+     * If null actions are run on the receiving thread, which allows frames
+     * to be processed without being copied out of the receive buffer.
+     *
+     * @return the {@link Executor} to run received {@link MachineAction}s on, or null.
+     */
+    Executor getActionExecutor();
+
+    /**
+     * Gets a human readable representation of the remote address.
+     *
+     * @return a human readable representation of the remote address.
+     */
+    String getRemoteName();
+
+    /**
+     * Closes the underlying connection.
+     *
+     * @throws IOException if closing the connection throws an {@link IOException}.
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,55 @@
+package com.nija123098.sithreon.backend.networking;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Opens {@link SocketChannel}s over Unix domain socket files,
+ * for machines on the same host to connect without the overhead of TCP.
+ *
+ * @author nija123098
+ */
+class UnixDomainSockets {
+    /**
+     * Connects to a Unix domain socket file.
+     *
+     * @param file the socket file.
+     * @return the connected channel.
+     * @throws IOException if the connection can not be made.
+     */
+    static SocketChannel connect(Path file) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(file));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Binds a server channel to a Unix domain socket file, replacing a file left by an earlier binding.
+     *
+     * @param file the socket file.
+     * @return the bound server channel.
+     * @throws IOException if the channel can not be bound.
+     */
+    static ServerSocketChannel bind(Path file) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            Files.deleteIfExists(file);// not deleted if the last machine using it did not close
+            channel.bind(UnixDomainSocketAddress.of(file));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,83 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The frames waiting to be written by a {@link Transport}, scheduled by {@link Lane}.
+ * <p>
+ * Frames on the {@link Lane#INTERACTIVE} lane are taken whole and before
+ * anything else, frames on the {@link Lane#BULK} lane are taken one chunk at
+ * a time so interactive frames queued mid transfer are written between chunks.
+ * Frames may be added from any thread, but only one thread may take at a time.
+ *
+ * @author nija123098
+ */
+class WriteQueue {
+    /**
+     * The frames on the {@link Lane#INTERACTIVE} lane.
+     */
+    private final Queue<PendingWrite> interactive = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The frames on the {@link Lane#BULK} lane.
+     */
+    private final Queue<PendingWrite> bulk = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The {@link Lane#BULK} frame being split into chunks, or null.
+     */
+    private volatile PendingWrite chunking;
+
+    /**
+     * Queues a frame to be written.
+     *
+     * @param write the frame to write.
+     * @param lane  the lane to write the frame on.
+     */
+    void add(PendingWrite write, Lane lane) {
+        (lane == Lane.BULK ? this.bulk : this.interactive).add(write);
+    }
+
+    /**
+     * Takes the next frame or chunk to write.
+     *
+     * @return the next frame or chunk to write, or null if there is none.
+     */
+    synchronized PendingWrite poll() {
+        PendingWrite write = this.interactive.poll();
+        if (write != null) return write;
+        if (this.chunking == null) {
+            if ((write = this.bulk.poll()) == null) return null;
+            write.getFrame().position(write.getFrame().position() + Integer.BYTES);// chunks have their own headers
+            this.chunking = write;
+        }
+        write = this.chunking.nextChunk(Config.transferChunkSize);
+        if (!this.chunking.hasRemaining()) this.chunking = null;
+        return write;
+    }
+
+    /**
+     * Gets if there are no frames to write.
+     *
+     * @return if there are no frames to write.
+     */
+    boolean isEmpty() {
+        return this.interactive.isEmpty() && this.chunking == null && this.bulk.isEmpty();
+    }
+
+    /**
+     * Completes all queued frames exceptionally, including a partially written {@link Lane#BULK} frame.
+     *
+     * @param throwable the reason the frames will not be written.
+     */
+    synchronized void failAll(Throwable throwable) {
+        PendingWrite write;
+        while ((write = this.interactive.poll()) != null) write.fail(throwable);
+        if (this.chunking != null) this.chunking.fail(throwable);
+        this.chunking = null;
+        while ((write = this.bulk.poll()) != null) write.fail(throwable);
+    }
+}
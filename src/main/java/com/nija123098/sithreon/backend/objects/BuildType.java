@@ -1,15 +1,24 @@
 package com.nija123098.sithreon.backend.objects;
 
 import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.machines.GameServer;
+import com.nija123098.sithreon.backend.util.BlobStore;
 import com.nija123098.sithreon.backend.util.FileUtil;
 import com.nija123098.sithreon.backend.util.Log;
 import com.nija123098.sithreon.backend.util.StreamUtil;
 import com.nija123098.sithreon.backend.util.throwable.SithreonException;
+import com.nija123098.sithreon.backend.util.throwable.SithreonSecurityException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents the container environments that
@@ -19,20 +28,34 @@ public enum BuildType {
     ALPINE("sithreon-runner:alpine") {
         @Override
         public String getDockerfileText() {
-            return "FROM openjdk:8-jdk-alpine\n" +
+            return "FROM eclipse-temurin:21-jdk-alpine\n" +
                     super.getDockerfileText();
         }
     },
     UBUNTU("sithreon-runner:ubuntu") {
         @Override
         public String getDockerfileText() {
-            return "FROM openjdk:8-jdk\n" +
+            return "FROM eclipse-temurin:21-jdk\n" +
                     super.getDockerfileText();
         }
     };
 
+    /**
+     * The number of bytes of the content hash used to version image tags.
+     */
+    private static final int VERSION_BYTES = 6;
+
     private final String imageName;
-    private boolean built;
+
+    /**
+     * The tag of the image built for the current content, or null if it is not yet built.
+     */
+    private volatile String image;
+
+    /**
+     * The lock held while building the image, rather than a monitor which would pin a virtual thread waiting on docker.
+     */
+    private final ReentrantLock buildLock = new ReentrantLock();
 
     BuildType(String imageName) {
         this.imageName = imageName;
@@ -40,7 +63,7 @@ public enum BuildType {
 
     public String getContainer() {
         this.ensureImageBuild();
-        return this.imageName;
+        return this.image;
     }
 
     public String getDockerfileText() {
@@ -52,47 +75,96 @@ public enum BuildType {
                 "CMD /bin/sh run.sh\n";
     }
 
-    private boolean isImageBuilt() {
+    /**
+     * Gets the lines of the script run when the container starts.
+     *
+     * @return the lines of the run script.
+     */
+    private List<String> getRunScript() {
+        return Arrays.asList("sleep 15", "java -jar sithreon.jar gc $COMPETITOR $AUTH_CODE");
+    }
+
+    /**
+     * Gets the lines of the config the container runs with, derived from this machine's config.
+     *
+     * @return the lines of the container's config.
+     */
+    private List<String> getConfig() {
+        return Arrays.asList("gameServerAddress=" + Config.gameServerAddress, "internalPort=" + +Config.internalPort, "gameServerSocketFile=" + (GameServer.getSocketFile() == null ? "" : GameServer.getSocketFile()), "authenticateMachines=" + Config.authenticateMachines, "checkRepositoryValidity=false", "machineId=" + Config.machineId + "-runner", "standardAccessibleDomains=" + Config.gameServerAddress);
+    }
+
+    /**
+     * Gets the image tag for the current content of the image,
+     * so a change to the Dockerfile, run script, config, or jar builds a new image
+     * rather than reusing one built by an earlier version.
+     *
+     * @param jar the jar copied into the image.
+     * @return the versioned image tag.
+     * @throws IOException if hashing the jar throws an {@link IOException}.
+     */
+    private String getVersionedImageName(Path jar) throws IOException {
+        MessageDigest digest;
         try {
-            Process process = new ProcessBuilder("docker", "image", "ls", "-q", this.imageName).start();
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new SithreonSecurityException("No SHA-256 implementation found", e);
+        }
+        digest.update(this.getDockerfileText().getBytes(StandardCharsets.UTF_8));
+        for (String line : this.getRunScript()) digest.update((line + '\n').getBytes(StandardCharsets.UTF_8));
+        for (String line : this.getConfig()) digest.update((line + '\n').getBytes(StandardCharsets.UTF_8));
+        if (Files.isRegularFile(jar)) digest.update(BlobStore.hash(jar).getBytes(StandardCharsets.UTF_8));
+        return this.imageName + "-" + HexFormat.of().formatHex(digest.digest(), 0, VERSION_BYTES);
+    }
+
+    private static boolean isImageBuilt(String image) {
+        try {
+            Process process = new ProcessBuilder("docker", "image", "ls", "-q", image).start();
             process.waitFor();// Shouldn't block long.
-            return (this.built = process.getInputStream().read() != -1);
+            return process.getInputStream().read() != -1;
         } catch (IOException e) {
-            throw new SithreonException("IOException checking docker image existence: " + this.imageName, e);
+            throw new SithreonException("IOException checking docker image existence: " + image, e);
         } catch (InterruptedException e) {
             throw new SithreonException("Inspected InterruptedException waiting for image check", e);
         }
     }
 
     /**
-     * Check that the image this represents is built.
+     * Check that the image this represents is built for the current content.
+     *
+     * @throws SithreonException if the image can not be built.
      */
     public void ensureImageBuild() {
-        if (this.built) return;
-        synchronized (this) {
-            if (this.built) return;// Recheck in case a previous call built it while idle.
-            if (this.isImageBuilt()) return;
-            try {
-                Log.INFO.log("Building Docker container: " + this.imageName);
-                String buildPath = Config.tmpDirectory + "sithreon/runner/image/" + this.imageName + "/";
-                Path path = Paths.get(buildPath);
-                Files.createDirectories(path);
-                Files.write(Paths.get(buildPath, "Dockerfile"), Collections.singletonList(this.getDockerfileText()));
-                Files.write(Paths.get(buildPath, "run.sh"), Arrays.asList("sleep 15", "java -jar sithreon.jar gc $COMPETITOR $AUTH_CODE"));
-                Files.write(Paths.get(buildPath, "config.cfg"), Arrays.asList("gameServerAddress=" + Config.gameServerAddress, "internalPort=" + +Config.internalPort, "authenticateMachines=" + Config.authenticateMachines, "checkRepositoryValidity=false", "machineId=" + Config.machineId + "-runner", "standardAccessibleDomains=" + Config.gameServerAddress), StandardOpenOption.CREATE);
-                Files.copy(Paths.get(FileUtil.getSithreonLocation()), Paths.get(buildPath, "sithreon.jar"), StandardCopyOption.REPLACE_EXISTING);
-                Process process = new ProcessBuilder("docker", "build", "--tag", this.imageName, "--force-rm", buildPath).start();
-                process.waitFor();
-                if (!this.isImageBuilt()) {
-                    Log.ERROR.log("Failed build for container: " + this.imageName + "\n" + StreamUtil.readFully(process.getInputStream(), 4096));
-                }
-                Log.INFO.log("Completed building Docker container: " + this.imageName);
-                FileUtil.deleteFiles(path);
-            } catch (IOException e) {
-                throw new SithreonException("IOException building docker existence: " + this.imageName, e);
-            } catch (InterruptedException e) {
-                throw new SithreonException("Inspected InterruptedException waiting for image check", e);
+        if (this.image != null) return;
+        this.buildLock.lock();
+        try {
+            if (this.image != null) return;// Recheck in case a previous call built it while idle.
+            Path jar = Paths.get(FileUtil.getSithreonLocation());
+            String image = this.getVersionedImageName(jar);
+            if (isImageBuilt(image)) {
+                this.image = image;
+                return;
             }
+            Log.INFO.log("Building Docker container: " + image);
+            String buildPath = Config.tmpDirectory + "sithreon/runner/image/" + image + "/";
+            Path path = Paths.get(buildPath);
+            Files.createDirectories(path);
+            Files.write(Paths.get(buildPath, "Dockerfile"), Collections.singletonList(this.getDockerfileText()));
+            Files.write(Paths.get(buildPath, "run.sh"), this.getRunScript());
+            Files.write(Paths.get(buildPath, "config.cfg"), this.getConfig(), StandardOpenOption.CREATE);
+            Files.copy(jar, Paths.get(buildPath, "sithreon.jar"), StandardCopyOption.REPLACE_EXISTING);
+            Process process = new ProcessBuilder("docker", "build", "--tag", image, "--force-rm", buildPath).start();
+            process.waitFor();
+            FileUtil.deleteFiles(path);
+            if (!isImageBuilt(image))
+                throw new SithreonException("Failed build for container: " + image + "\n" + StreamUtil.readFully(process.getInputStream(), 4096));
+            this.image = image;
+            Log.INFO.log("Completed building Docker container: " + image);
+        } catch (IOException e) {
+            throw new SithreonException("IOException building docker existence: " + this.imageName, e);
+        } catch (InterruptedException e) {
+            throw new SithreonException("Inspected InterruptedException waiting for image check", e);
+        } finally {
+            this.buildLock.unlock();
         }
     }
 }
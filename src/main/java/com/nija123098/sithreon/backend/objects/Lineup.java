@@ -24,6 +24,16 @@ public class Lineup implements Comparable<Lineup> {
         }
     }
 
+    /**
+     * Constructs an instance from {@link Repository} instances already
+     * in sorted order, such as when decoded, without sorting them again.
+     *
+     * @param sorted the {@link Repository} instances in sorted order.
+     */
+    Lineup(Repository[] sorted) {
+        this.repositories = Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
     public Lineup(String members) {
         this(Stream.of(members.split(Pattern.quote("+"))).map(s -> {
             int position = s.indexOf('#');
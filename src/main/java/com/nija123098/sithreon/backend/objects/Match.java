@@ -40,6 +40,20 @@ public class Match extends MatchUp implements Comparable<Match> {
         this.setupTeams();
     }
 
+    /**
+     * Constructs a match from teams already in sorted order,
+     * such as when decoded, without sorting them again.
+     *
+     * @param sorted the teams competing in sorted order.
+     * @param time   the time the match was initially scheduled.
+     */
+    Match(Team[] sorted, long time) {
+        super((List<Lineup>) null);
+        this.teams = Collections.unmodifiableList(Arrays.asList(sorted));
+        this.time = time;
+        this.setupTeams();
+    }
+
     public Match(String s) {
         super((List<Lineup>) null);
         String[] split = s.split(Pattern.quote("+"));
@@ -65,6 +79,15 @@ public class Match extends MatchUp implements Comparable<Match> {
         return this.teams;
     }
 
+    /**
+     * Gets the time the match was initially scheduled.
+     *
+     * @return the time the match was initially scheduled.
+     */
+    public long getTime() {
+        return this.time;
+    }
+
     /**
      * Gets the highest priority of all competitors.
      *
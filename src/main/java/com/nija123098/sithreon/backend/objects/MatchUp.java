@@ -37,6 +37,16 @@ public class MatchUp {
         this(Stream.of(lineups.split(Pattern.quote("|"))).map(Lineup::new).collect(Collectors.toList()));
     }
 
+    /**
+     * Constructs an instance from {@link Lineup}s already in
+     * sorted order, such as when decoded, without sorting them again.
+     *
+     * @param sorted the {@link Lineup}s in sorted order.
+     */
+    MatchUp(Lineup[] sorted) {
+        this.lineups = Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
     /**
      * Gets the list of competing lineups for this instance.
      *
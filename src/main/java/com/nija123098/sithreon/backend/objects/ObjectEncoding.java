@@ -0,0 +1,258 @@
+package com.nija123098.sithreon.backend.objects;
+
+import com.nija123098.sithreon.backend.util.BinaryUtil;
+import com.nija123098.sithreon.backend.util.StringTable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The compact binary encoding of {@link Match}, {@link MatchUp}, {@link Lineup},
+ * {@link Team}, {@link TeamMember} and {@link Competitor} instances.
+ * <p>
+ * Counts are variable length integers, repositories are put through the
+ * connection's {@link StringTable}, commit hashes are put as their raw
+ * bytes by {@link BinaryUtil#putHash(ByteBuffer, String)}, and lists are
+ * decoded in the order they were encoded since they were already sorted.
+ *
+ * @author nija123098
+ */
+public class ObjectEncoding {
+    /**
+     * Gets a count of encoded elements, each of which takes at least one byte.
+     *
+     * @param buffer the buffer to get from.
+     * @return the count.
+     * @throws BufferUnderflowException if the count is negative or more than the bytes remaining.
+     */
+    private static int getCount(ByteBuffer buffer) {
+        int count = BinaryUtil.getVarInt(buffer);
+        if (count < 0 || count > buffer.remaining()) throw new BufferUnderflowException();
+        return count;
+    }
+
+    /**
+     * Gets the number of bytes the {@link Repository} takes when encoded.
+     *
+     * @param repository the repository.
+     * @return the number of bytes the repository takes.
+     */
+    private static int sizeOf(Repository repository) {
+        return StringTable.stringSize(repository.toString());
+    }
+
+    /**
+     * Gets the number of bytes the {@link Lineup} takes when encoded.
+     *
+     * @param lineup the lineup.
+     * @return the number of bytes the lineup takes.
+     */
+    public static int sizeOf(Lineup lineup) {
+        List<Repository> repositories = lineup.getRepositories();
+        int size = BinaryUtil.varIntSize(repositories.size());
+        for (Repository repository : repositories) size += sizeOf(repository);
+        return size;
+    }
+
+    /**
+     * Encodes the {@link Lineup}.
+     *
+     * @param buffer the buffer to put to.
+     * @param lineup the lineup.
+     */
+    public static void put(ByteBuffer buffer, Lineup lineup) {
+        List<Repository> repositories = lineup.getRepositories();
+        BinaryUtil.putVarInt(buffer, repositories.size());
+        for (Repository repository : repositories) StringTable.putString(buffer, repository.toString());
+    }
+
+    /**
+     * Decodes a {@link Lineup}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the lineup.
+     */
+    public static Lineup getLineup(ByteBuffer buffer) {
+        Repository[] repositories = new Repository[getCount(buffer)];
+        for (int i = 0; i < repositories.length; i++) repositories[i] = Repository.getRepo(StringTable.getString(buffer));
+        return new Lineup(repositories);
+    }
+
+    /**
+     * Gets the number of bytes the {@link MatchUp} takes when encoded.
+     *
+     * @param matchUp the match up.
+     * @return the number of bytes the match up takes.
+     */
+    public static int sizeOf(MatchUp matchUp) {
+        List<Lineup> lineups = matchUp.getLineups();
+        int size = BinaryUtil.varIntSize(lineups.size());
+        for (Lineup lineup : lineups) size += sizeOf(lineup);
+        return size;
+    }
+
+    /**
+     * Encodes the {@link MatchUp}.
+     *
+     * @param buffer  the buffer to put to.
+     * @param matchUp the match up.
+     */
+    public static void put(ByteBuffer buffer, MatchUp matchUp) {
+        List<Lineup> lineups = matchUp.getLineups();
+        BinaryUtil.putVarInt(buffer, lineups.size());
+        for (Lineup lineup : lineups) put(buffer, lineup);
+    }
+
+    /**
+     * Decodes a {@link MatchUp}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the match up.
+     */
+    public static MatchUp getMatchUp(ByteBuffer buffer) {
+        Lineup[] lineups = new Lineup[getCount(buffer)];
+        for (int i = 0; i < lineups.length; i++) lineups[i] = getLineup(buffer);
+        return new MatchUp(lineups);
+    }
+
+    /**
+     * Gets the number of bytes the {@link TeamMember} takes when encoded.
+     *
+     * @param member the team member.
+     * @return the number of bytes the team member takes.
+     */
+    public static int sizeOf(TeamMember member) {
+        return sizeOf(member.getRepository()) + BinaryUtil.hashSize(member.getHash());
+    }
+
+    /**
+     * Encodes the {@link TeamMember}.
+     *
+     * @param buffer the buffer to put to.
+     * @param member the team member.
+     */
+    public static void put(ByteBuffer buffer, TeamMember member) {
+        StringTable.putString(buffer, member.getRepository().toString());
+        BinaryUtil.putHash(buffer, member.getHash());
+    }
+
+    /**
+     * Decodes a {@link TeamMember}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the team member.
+     */
+    public static TeamMember getTeamMember(ByteBuffer buffer) {
+        return new TeamMember(Repository.getRepo(StringTable.getString(buffer)), BinaryUtil.getHash(buffer));
+    }
+
+    /**
+     * Gets the number of bytes the {@link Team} takes when encoded.
+     *
+     * @param team the team.
+     * @return the number of bytes the team takes.
+     */
+    public static int sizeOf(Team team) {
+        List<TeamMember> members = team.getMembers();
+        int size = BinaryUtil.varIntSize(members.size());
+        for (TeamMember member : members) size += sizeOf(member);
+        return size;
+    }
+
+    /**
+     * Encodes the {@link Team}.
+     *
+     * @param buffer the buffer to put to.
+     * @param team   the team.
+     */
+    public static void put(ByteBuffer buffer, Team team) {
+        List<TeamMember> members = team.getMembers();
+        BinaryUtil.putVarInt(buffer, members.size());
+        for (TeamMember member : members) put(buffer, member);
+    }
+
+    /**
+     * Decodes a {@link Team}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the team.
+     */
+    public static Team getTeam(ByteBuffer buffer) {
+        TeamMember[] members = new TeamMember[getCount(buffer)];
+        for (int i = 0; i < members.length; i++) members[i] = getTeamMember(buffer);
+        return new Team(members);
+    }
+
+    /**
+     * Gets the number of bytes the {@link Match} takes when encoded.
+     *
+     * @param match the match.
+     * @return the number of bytes the match takes.
+     */
+    public static int sizeOf(Match match) {
+        List<Team> teams = match.getTeams();
+        int size = BinaryUtil.varIntSize(teams.size()) + BinaryUtil.varLongSize(match.getTime());
+        for (Team team : teams) size += sizeOf(team);
+        return size;
+    }
+
+    /**
+     * Encodes the {@link Match}.
+     *
+     * @param buffer the buffer to put to.
+     * @param match  the match.
+     */
+    public static void put(ByteBuffer buffer, Match match) {
+        List<Team> teams = match.getTeams();
+        BinaryUtil.putVarInt(buffer, teams.size());
+        for (Team team : teams) put(buffer, team);
+        BinaryUtil.putVarLong(buffer, match.getTime());
+    }
+
+    /**
+     * Decodes a {@link Match}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the match.
+     */
+    public static Match getMatch(ByteBuffer buffer) {
+        Team[] teams = new Team[getCount(buffer)];
+        for (int i = 0; i < teams.length; i++) teams[i] = getTeam(buffer);
+        return new Match(teams, BinaryUtil.getVarLong(buffer));
+    }
+
+    /**
+     * Gets the number of bytes the {@link Competitor} takes when encoded.
+     *
+     * @param competitor the competitor.
+     * @return the number of bytes the competitor takes.
+     */
+    public static int sizeOf(Competitor competitor) {
+        return sizeOf((TeamMember) competitor) + BinaryUtil.stringSize(competitor.getMatchId()) + BinaryUtil.varIntSize(competitor.getTeamNumber());
+    }
+
+    /**
+     * Encodes the {@link Competitor}.
+     *
+     * @param buffer     the buffer to put to.
+     * @param competitor the competitor.
+     */
+    public static void put(ByteBuffer buffer, Competitor competitor) {
+        put(buffer, (TeamMember) competitor);
+        BinaryUtil.putString(buffer, competitor.getMatchId());
+        BinaryUtil.putVarInt(buffer, competitor.getTeamNumber());
+    }
+
+    /**
+     * Decodes a {@link Competitor}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the competitor.
+     */
+    public static Competitor getCompetitor(ByteBuffer buffer) {
+        Repository repository = Repository.getRepo(StringTable.getString(buffer));
+        String hash = BinaryUtil.getHash(buffer);
+        return new Competitor(repository, hash, BinaryUtil.getString(buffer), BinaryUtil.getVarInt(buffer));
+    }
+}
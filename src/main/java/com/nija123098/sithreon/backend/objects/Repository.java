@@ -2,7 +2,6 @@ package com.nija123098.sithreon.backend.objects;
 
 import com.nija123098.sithreon.backend.Config;
 import com.nija123098.sithreon.backend.Database;
-import com.nija123098.sithreon.backend.Machine;
 import com.nija123098.sithreon.backend.machines.CheckClient;
 import com.nija123098.sithreon.backend.util.*;
 import com.nija123098.sithreon.backend.util.throwable.IOExceptionWrapper;
@@ -20,6 +19,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * An instance representative of a repository.
@@ -62,6 +63,12 @@ public class Repository implements Comparable<Repository> {
      */
     private final String repo;
 
+    /**
+     * The lock held while the local copy of the repository is changed.
+     * This is not a monitor so virtual threads waiting on git are not pinned to their carrier.
+     */
+    private final ReentrantLock sourceLock = new ReentrantLock();
+
     /**
      * Constructs an instance specified by a domain/owner/name representation.
      *
@@ -93,13 +100,37 @@ public class Repository implements Comparable<Repository> {
         return true;
     }
 
+    /**
+     * Gets the lock held while the local copy of the repository is changed,
+     * to be held while reading it so it does not change.
+     *
+     * @return the lock of the local copy.
+     */
+    public Lock getSourceLock() {
+        return this.sourceLock;
+    }
+
     /**
      * Fetches the repository locally to the location given
      * by {@link Repository#getLocalRepoLocation()} if necessary.
      *
      * @param hash the hash to set the repository at.
      */
-    public synchronized void getSource(String hash) {
+    public void getSource(String hash) {
+        this.sourceLock.lock();
+        try {
+            this.fetchSource(hash);
+        } finally {
+            this.sourceLock.unlock();
+        }
+    }
+
+    /**
+     * Fetches the repository locally while holding the {@link Repository#getSourceLock()}.
+     *
+     * @param hash the hash to set the repository at.
+     */
+    private void fetchSource(String hash) {
         File location = new File(this.getLocalRepoLocation());
         if (location.exists()) {
             if (this.localVersion().equals(hash)) return;
@@ -192,7 +223,7 @@ public class Repository implements Comparable<Repository> {
     /**
      * Gets the latest HEAD hash of the repository.
      *
-     * @return the latest HEAD hash.
+     * @return the latest HEAD hash, or null if the thread was interrupted.
      */
     public String getHeadHash() {
         Process process;
@@ -214,9 +245,9 @@ public class Repository implements Comparable<Repository> {
         } catch (IOException e) {
             ConnectionUtil.throwConnectionException("IOException connecting to git repository", e);
             throw new NoReturnException();
-        } catch (InterruptedException e) {
-            if (!Machine.MACHINE.get().closing())
-                Log.ERROR.log("Unexpected interruption exception getting HEAD hash of " + this.repo, e);
+        } catch (InterruptedException e) {// the machine asking is closing
+            Log.DEBUG.log("Interrupted getting HEAD hash of " + this.repo);
+            Thread.currentThread().interrupt();// left for the interrupted thread to act on
             process.destroyForcibly();
             return null;// unlikely
         }
@@ -18,6 +18,18 @@ public class Team extends Lineup {
         this.members.forEach(teamMember -> teamMember.setTeam(this));
     }
 
+    /**
+     * Constructs a team from members already in sorted order,
+     * such as when decoded, without sorting them again.
+     *
+     * @param sorted the members of the team in sorted order.
+     */
+    Team(TeamMember[] sorted) {
+        super(Stream.of(sorted).map(TeamMember::getRepository).toArray(Repository[]::new));
+        this.members = Collections.unmodifiableList(Arrays.asList(sorted));
+        this.members.forEach(teamMember -> teamMember.setTeam(this));
+    }
+
     public Team(String members) {
         super(members);
         this.members = Collections.unmodifiableList(Stream.of(members.split(Pattern.quote("+"))).map(s -> {
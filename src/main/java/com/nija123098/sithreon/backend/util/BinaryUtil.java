@@ -0,0 +1,301 @@
+package com.nija123098.sithreon.backend.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A utility for compact binary encodings on {@link ByteBuffer}s.
+ * <p>
+ * Variable length integers use 7 bits per byte, low order group first,
+ * with the high bit of a byte set if another byte follows.
+ *
+ * @author nija123098
+ */
+public class BinaryUtil {
+    /**
+     * The number of characters in a hexadecimal SHA-1 hash, such as a git commit hash.
+     */
+    private static final int HEX_HASH_LENGTH = 40;
+
+    /**
+     * The hexadecimal digits for encoding.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Gets the number of bytes a non-negative int takes as a variable length integer.
+     *
+     * @param value the non-negative value.
+     * @return the number of bytes the value takes.
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) ++size;
+        return size;
+    }
+
+    /**
+     * Gets the number of bytes a non-negative long takes as a variable length integer.
+     *
+     * @param value the non-negative value.
+     * @return the number of bytes the value takes.
+     */
+    public static int varLongSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) ++size;
+        return size;
+    }
+
+    /**
+     * Puts a non-negative int as a variable length integer.
+     *
+     * @param buffer the buffer to put to.
+     * @param value  the non-negative value.
+     */
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Gets a variable length int.
+     *
+     * @param buffer the buffer to get from.
+     * @return the value.
+     * @throws BufferUnderflowException if the value is malformed or incomplete.
+     */
+    public static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        byte b;
+        for (int shift = 0; shift < 35; shift += 7) {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new BufferUnderflowException();
+    }
+
+    /**
+     * Puts a non-negative long as a variable length integer.
+     *
+     * @param buffer the buffer to put to.
+     * @param value  the non-negative value.
+     */
+    public static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Gets a variable length long.
+     *
+     * @param buffer the buffer to get from.
+     * @return the value.
+     * @throws BufferUnderflowException if the value is malformed or incomplete.
+     */
+    public static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        byte b;
+        for (int shift = 0; shift < 70; shift += 7) {
+            b = buffer.get();
+            value |= (b & 0x7FL) << shift;
+            if (b >= 0) return value;
+        }
+        throw new BufferUnderflowException();
+    }
+
+    /**
+     * Gets the number of bytes the UTF-8 encoding of a string takes.
+     * <p>
+     * Unpaired surrogates are counted as the single byte replacement
+     * {@link String#getBytes(java.nio.charset.Charset)} would use.
+     *
+     * @param s the string.
+     * @return the number of bytes the UTF-8 encoding takes.
+     */
+    public static int utf8Length(String s) {
+        int length = 0;
+        char c;
+        for (int i = 0; i < s.length(); i++) {
+            c = s.charAt(i);
+            if (c < 0x80) length += 1;
+            else if (c < 0x800) length += 2;
+            else if (!Character.isSurrogate(c)) length += 3;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                ++i;
+            } else length += 1;
+        }
+        return length;
+    }
+
+    /**
+     * Puts the UTF-8 encoding of a string without a length, taking {@link BinaryUtil#utf8Length(String)} bytes.
+     *
+     * @param buffer the buffer to put to.
+     * @param s      the string.
+     */
+    public static void putUtf8(ByteBuffer buffer, String s) {
+        char c;
+        int codePoint;
+        for (int i = 0; i < s.length(); i++) {
+            c = s.charAt(i);
+            if (c < 0x80) buffer.put((byte) c);
+            else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else buffer.put((byte) '?');
+        }
+    }
+
+    /**
+     * Gets a string from UTF-8 bytes.
+     *
+     * @param buffer the buffer to get from.
+     * @param length the number of bytes of the encoding.
+     * @return the string.
+     */
+    public static String getUtf8(ByteBuffer buffer, int length) {
+        if (length < 0 || length > buffer.remaining()) throw new BufferUnderflowException();
+        String s;
+        if (buffer.hasArray()) s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    /**
+     * Consumes bytes from a buffer, returning a view of them limited to their length.
+     *
+     * @param buffer the buffer to consume from.
+     * @param length the number of bytes to consume.
+     * @return a view of the consumed bytes.
+     */
+    public static ByteBuffer getSlice(ByteBuffer buffer, int length) {
+        if (length < 0 || length > buffer.remaining()) throw new BufferUnderflowException();
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * Gets the number of bytes a string takes when put with {@link BinaryUtil#putString(ByteBuffer, String)}.
+     *
+     * @param s the string.
+     * @return the number of bytes the string takes.
+     */
+    public static int stringSize(String s) {
+        int length = utf8Length(s);
+        return varIntSize(length) + length;
+    }
+
+    /**
+     * Puts a string as it's variable length UTF-8 byte count followed by it's UTF-8 bytes.
+     *
+     * @param buffer the buffer to put to.
+     * @param s      the string.
+     */
+    public static void putString(ByteBuffer buffer, String s) {
+        putVarInt(buffer, utf8Length(s));
+        putUtf8(buffer, s);
+    }
+
+    /**
+     * Gets a string put with {@link BinaryUtil#putString(ByteBuffer, String)}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the string.
+     */
+    public static String getString(ByteBuffer buffer) {
+        return getUtf8(buffer, getVarInt(buffer));
+    }
+
+    /**
+     * Gets if a string is a lower case hexadecimal SHA-1 hash, which can be put as raw bytes.
+     *
+     * @param hash the string.
+     * @return if the string is a lower case hexadecimal SHA-1 hash.
+     */
+    private static boolean isHexHash(String hash) {
+        if (hash.length() != HEX_HASH_LENGTH) return false;
+        char c;
+        for (int i = 0; i < HEX_HASH_LENGTH; i++) {
+            c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of bytes a hash takes when put with {@link BinaryUtil#putHash(ByteBuffer, String)}.
+     *
+     * @param hash the hash.
+     * @return the number of bytes the hash takes.
+     */
+    public static int hashSize(String hash) {
+        if (isHexHash(hash)) return 1 + HEX_HASH_LENGTH / 2;
+        int length = utf8Length(hash);
+        return varIntSize(length + 1) + length;
+    }
+
+    /**
+     * Puts a commit hash, as it's 20 raw bytes if it is a lower case hexadecimal SHA-1 hash.
+     * <p>
+     * A leading 0 indicates the raw bytes follow, otherwise the UTF-8 byte
+     * count plus one precedes the hash's UTF-8 bytes so any string can be put.
+     *
+     * @param buffer the buffer to put to.
+     * @param hash   the hash.
+     */
+    public static void putHash(ByteBuffer buffer, String hash) {
+        if (isHexHash(hash)) {
+            buffer.put((byte) 0);
+            for (int i = 0; i < HEX_HASH_LENGTH; i += 2)
+                buffer.put((byte) (Character.digit(hash.charAt(i), 16) << 4 | Character.digit(hash.charAt(i + 1), 16)));
+        } else {
+            putVarInt(buffer, utf8Length(hash) + 1);
+            putUtf8(buffer, hash);
+        }
+    }
+
+    /**
+     * Gets a hash put with {@link BinaryUtil#putHash(ByteBuffer, String)}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the hash.
+     */
+    public static String getHash(ByteBuffer buffer) {
+        int length = getVarInt(buffer);
+        if (length != 0) return getUtf8(buffer, length - 1);
+        char[] chars = new char[HEX_HASH_LENGTH];
+        byte b;
+        for (int i = 0; i < HEX_HASH_LENGTH; i += 2) {
+            b = buffer.get();
+            chars[i] = HEX_DIGITS[(b >> 4) & 0xF];
+            chars[i + 1] = HEX_DIGITS[b & 0xF];
+        }
+        return new String(chars);
+    }
+}
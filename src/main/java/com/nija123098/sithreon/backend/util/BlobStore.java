@@ -0,0 +1,149 @@
+package com.nija123098.sithreon.backend.util;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A content addressed store of file contents under {@link Config#blobDirectory},
+ * keyed by the git blob hash of the contents so it matches git's object ids.
+ * <p>
+ * Blobs are written to a partial file and only moved into place once their
+ * hash is verified, so a blob in the store is always complete.
+ *
+ * @author nija123098
+ */
+public class BlobStore {
+    /**
+     * The size of the buffer for hashing files.
+     */
+    private static final int HASH_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The suffix of a blob being received, unique to the process since several may share the store.
+     */
+    private static final String PARTIAL_SUFFIX = "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".part";
+
+    /**
+     * The hexadecimal digits for encoding hashes.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Gets the git blob hash of a file's contents.
+     *
+     * @param file the file to hash.
+     * @return the lower case hexadecimal git blob hash.
+     * @throws IOException if reading the file throws an {@link IOException}.
+     */
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            Log.ERROR.log("No SHA-1 implementation found", e);
+            throw new NoReturnException();
+        }
+        digest.update(("blob " + Files.size(file) + '\0').getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        int read;
+        try (InputStream stream = Files.newInputStream(file)) {
+            while ((read = stream.read(buffer)) != -1) digest.update(buffer, 0, read);
+        }
+        byte[] bytes = digest.digest();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Checks a hash is a lower case hexadecimal hash, so it is safe to use in a path.
+     *
+     * @param hash the hash to check.
+     * @return the hash.
+     * @throws IllegalArgumentException if the hash is not lower case hexadecimal.
+     */
+    private static String checkHash(String hash) {
+        if (hash.length() < 3 || !hash.chars().allMatch(c -> c >= '0' && c <= '9' || c >= 'a' && c <= 'f'))
+            throw new IllegalArgumentException("Invalid blob hash " + hash);
+        return hash;
+    }
+
+    /**
+     * Gets the path of a blob in the store, which may not exist.
+     *
+     * @param hash the hash of the blob.
+     * @return the path of the blob.
+     */
+    public static Path getPath(String hash) {
+        checkHash(hash);
+        return Paths.get(Config.blobDirectory, hash.substring(0, 2), hash.substring(2));// split like git to keep directories small
+    }
+
+    /**
+     * Gets the path a blob is written to while being received.
+     *
+     * @param hash the hash of the blob.
+     * @return the path of the partial blob.
+     * @throws IOException if the parent directory can not be made.
+     */
+    public static Path getPartialPath(String hash) throws IOException {
+        Path path = getPath(hash);
+        Files.createDirectories(path.getParent());
+        return path.resolveSibling(path.getFileName() + PARTIAL_SUFFIX);
+    }
+
+    /**
+     * Gets if the store contains a blob.
+     *
+     * @param hash the hash of the blob.
+     * @return if the store contains the blob.
+     */
+    public static boolean contains(String hash) {
+        return Files.exists(getPath(hash));
+    }
+
+    /**
+     * Moves a received blob into the store if it's contents match the hash.
+     *
+     * @param hash the hash of the blob.
+     * @return if the blob was added, otherwise the partial blob is deleted.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static boolean commit(String hash) throws IOException {
+        Path partial = getPartialPath(hash);
+        if (!hash(partial).equals(hash)) {
+            Files.deleteIfExists(partial);
+            return false;
+        }
+        Files.move(partial, getPath(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Copies a blob in the store to a file, making parent directories as needed.
+     *
+     * @param hash        the hash of the blob.
+     * @param destination the file to copy to.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static void copyTo(String hash, File destination) throws IOException {
+        Path path = destination.toPath();
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        Files.copy(getPath(hash), path, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,91 @@
+package com.nija123098.sithreon.backend.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of reusable byte arrays with power of two lengths.
+ * <p>
+ * Arrays are optionally returned with {@link BufferPool#release(byte[])},
+ * arrays which are never released are left for garbage collection.
+ *
+ * @author nija123098
+ */
+public class BufferPool {
+    /**
+     * The length of the smallest array handed out.
+     */
+    public static final int MINIMUM_SIZE = 1 << 10;
+
+    /**
+     * The length of the largest array kept for reuse.
+     */
+    private static final int MAXIMUM_POOLED_SIZE = 1 << 24;
+
+    /**
+     * The number of arrays kept for reuse of each length.
+     */
+    private static final int ARRAYS_PER_SIZE = 16;
+
+    /**
+     * The arrays available for reuse by the base 2 logarithm of their length.
+     */
+    @SuppressWarnings("unchecked")
+    private static final Queue<byte[]>[] POOL = (Queue<byte[]>[]) new Queue<?>[Integer.SIZE];
+
+    /**
+     * The number of arrays in each of the {@code POOL} queues.
+     */
+    private static final AtomicInteger[] POOL_SIZES = new AtomicInteger[Integer.SIZE];
+
+    static {
+        for (int i = 0; i < Integer.SIZE; i++) {
+            POOL[i] = new ConcurrentLinkedQueue<>();
+            POOL_SIZES[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Gets an array at least as long as the provided size.
+     *
+     * @param size the minimum length of the array.
+     * @return an array at least as long as the provided size, the content is unspecified.
+     */
+    public static byte[] acquire(int size) {
+        int length = getPooledLength(size);
+        if (length > MAXIMUM_POOLED_SIZE) return new byte[length];
+        int index = Integer.numberOfTrailingZeros(length);
+        byte[] bytes = POOL[index].poll();
+        if (bytes == null) return new byte[length];
+        POOL_SIZES[index].decrementAndGet();
+        return bytes;
+    }
+
+    /**
+     * Returns the array for reuse.
+     * <p>
+     * The array must not be used after being released.
+     *
+     * @param bytes the array to return for reuse.
+     */
+    public static void release(byte[] bytes) {
+        if (bytes.length > MAXIMUM_POOLED_SIZE || Integer.bitCount(bytes.length) != 1 || bytes.length < MINIMUM_SIZE)
+            return;// not from the pool or too large to keep
+        int index = Integer.numberOfTrailingZeros(bytes.length);
+        if (POOL_SIZES[index].incrementAndGet() > ARRAYS_PER_SIZE) POOL_SIZES[index].decrementAndGet();
+        else POOL[index].add(bytes);
+    }
+
+    /**
+     * Gets the length of the array that will be handed out for the provided size.
+     *
+     * @param size the minimum length of the array.
+     * @return the length of the array that will be handed out.
+     */
+    static int getPooledLength(int size) {
+        if (size <= MINIMUM_SIZE) return MINIMUM_SIZE;
+        if (size > 1 << 30) return Integer.MAX_VALUE - 8;// not a power of two, never pooled
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+}
@@ -0,0 +1,212 @@
+package com.nija123098.sithreon.backend.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A growable first in first out queue of primitive bytes backed by an array from the {@link BufferPool}.
+ * <p>
+ * Bytes are appended at the tail and consumed from the head, consumed space is
+ * reclaimed by compacting when more space is needed, so removing a range
+ * never shifts the remaining bytes for each removal like a {@link ByteHandler}.
+ * <p>
+ * This is not thread safe.
+ *
+ * @author nija123098
+ */
+public class ByteQueue {
+    /**
+     * The backing array.
+     */
+    private byte[] array;
+
+    /**
+     * The index of the first unconsumed byte.
+     */
+    private int readIndex;
+
+    /**
+     * The index after the last written byte.
+     */
+    private int writeIndex;
+
+    /**
+     * Constructs an empty instance.
+     */
+    public ByteQueue() {
+        this.array = BufferPool.acquire(BufferPool.MINIMUM_SIZE);
+    }
+
+    /**
+     * Gets the number of bytes in the queue.
+     *
+     * @return the number of bytes in the queue.
+     */
+    public int size() {
+        return this.writeIndex - this.readIndex;
+    }
+
+    /**
+     * Gets if there are no bytes in the queue.
+     *
+     * @return if there are no bytes in the queue.
+     */
+    public boolean isEmpty() {
+        return this.writeIndex == this.readIndex;
+    }
+
+    /**
+     * Ensures that the provided number of bytes can be written after the tail without growing.
+     *
+     * @param length the number of bytes to be able to write.
+     */
+    public void ensureWritable(int length) {
+        if (this.array.length - this.writeIndex >= length) return;
+        int size = this.size();
+        if (this.array.length >= size + length) {// enough room after compacting
+            System.arraycopy(this.array, this.readIndex, this.array, 0, size);
+        } else {
+            byte[] replacement = BufferPool.acquire(size + length);
+            System.arraycopy(this.array, this.readIndex, replacement, 0, size);
+            BufferPool.release(this.array);
+            this.array = replacement;
+        }
+        this.readIndex = 0;
+        this.writeIndex = size;
+    }
+
+    /**
+     * Gets the backing array for writing directly after the {@link ByteQueue#getWriteIndex()}.
+     * <p>
+     * The array is only valid until the next call to a method that may grow the queue.
+     *
+     * @return the backing array.
+     */
+    public byte[] getArray() {
+        return this.array;
+    }
+
+    /**
+     * Gets the index of the backing array to write the next byte to.
+     *
+     * @return the index of the backing array to write the next byte to.
+     */
+    public int getWriteIndex() {
+        return this.writeIndex;
+    }
+
+    /**
+     * Gets the number of bytes that can be written to the backing array without growing.
+     *
+     * @return the number of bytes that can be written without growing.
+     */
+    public int getWritableLength() {
+        return this.array.length - this.writeIndex;
+    }
+
+    /**
+     * Gets a {@link ByteBuffer} over the writable space of the backing array
+     * after ensuring there is at least the provided number of writable bytes.
+     * <p>
+     * Bytes put in the buffer must be committed with {@link ByteQueue#written(int)}.
+     *
+     * @param minimum the minimum number of writable bytes.
+     * @return a {@link ByteBuffer} over the writable space.
+     */
+    public ByteBuffer getWritableBuffer(int minimum) {
+        this.ensureWritable(minimum);
+        return ByteBuffer.wrap(this.array, this.writeIndex, this.array.length - this.writeIndex);
+    }
+
+    /**
+     * Commits bytes written directly to the backing array to the queue.
+     *
+     * @param length the number of bytes written.
+     */
+    public void written(int length) {
+        if (length < 0 || this.writeIndex + length > this.array.length)
+            throw new IndexOutOfBoundsException("Invalid written length " + length);
+        this.writeIndex += length;
+    }
+
+    /**
+     * Adds bytes to the tail of the queue.
+     *
+     * @param bytes  the array to add bytes from.
+     * @param offset the index of the first byte to add.
+     * @param length the number of bytes to add.
+     */
+    public void add(byte[] bytes, int offset, int length) {
+        this.ensureWritable(length);
+        System.arraycopy(bytes, offset, this.array, this.writeIndex, length);
+        this.writeIndex += length;
+    }
+
+    /**
+     * Gets the big endian int at the head of the queue without consuming it.
+     *
+     * @return the int at the head of the queue.
+     * @throws BufferUnderflowException if there are less than 4 bytes in the queue.
+     */
+    public int peekInt() {
+        if (this.size() < Integer.BYTES) throw new BufferUnderflowException();
+        return ((this.array[this.readIndex] & 0xFF) << 24) | ((this.array[this.readIndex + 1] & 0xFF) << 16) | ((this.array[this.readIndex + 2] & 0xFF) << 8) | (this.array[this.readIndex + 3] & 0xFF);
+    }
+
+    /**
+     * Consumes the provided number of bytes without reading them.
+     *
+     * @param length the number of bytes to consume.
+     */
+    public void skip(int length) {
+        if (this.size() < length) throw new BufferUnderflowException();
+        this.readIndex += length;
+        if (this.readIndex == this.writeIndex) this.readIndex = this.writeIndex = 0;
+    }
+
+    /**
+     * Consumes bytes from the head of the queue, returning a view of them without copying.
+     * <p>
+     * The view is only valid until the next write to this queue.
+     *
+     * @param length the number of bytes to consume.
+     * @return a {@link ByteBuffer} over the consumed bytes.
+     */
+    public ByteBuffer slice(int length) {
+        if (this.size() < length) throw new BufferUnderflowException();
+        ByteBuffer buffer = ByteBuffer.wrap(this.array, this.readIndex, length).slice();
+        this.readIndex += length;// indices are reset on the next write, not here, to keep the view valid
+        return buffer;
+    }
+
+    /**
+     * Consumes bytes from the head of the queue, copying them into the provided array.
+     *
+     * @param destination the array to copy to.
+     * @param offset      the index of the array to start copying to.
+     * @param length      the number of bytes to consume.
+     */
+    public void take(byte[] destination, int offset, int length) {
+        if (this.size() < length) throw new BufferUnderflowException();
+        System.arraycopy(this.array, this.readIndex, destination, offset, length);
+        this.skip(length);
+    }
+
+    /**
+     * Shrinks the backing array to the minimum size if the queue is empty and has grown.
+     */
+    public void trim() {
+        if (!this.isEmpty() || this.array.length == BufferPool.MINIMUM_SIZE) return;
+        BufferPool.release(this.array);
+        this.array = BufferPool.acquire(BufferPool.MINIMUM_SIZE);
+        this.readIndex = this.writeIndex = 0;
+    }
+
+    /**
+     * Returns the backing array to the {@link BufferPool}, after which this instance must not be used.
+     */
+    public void release() {
+        BufferPool.release(this.array);
+        this.array = null;
+    }
+}
@@ -0,0 +1,58 @@
+package com.nija123098.sithreon.backend.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link Executor} which runs tasks one at a time in the
+ * order they are submitted on a shared backing {@link Executor}.
+ * <p>
+ * No thread is held while there are no tasks to run.
+ *
+ * @author nija123098
+ */
+public class SerialExecutor implements Executor {
+    /**
+     * The tasks waiting to be run.
+     */
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    /**
+     * The {@link Executor} to run tasks on.
+     */
+    private final Executor executor;
+
+    /**
+     * The task currently being run, or null if none is.
+     */
+    private Runnable active;
+
+    /**
+     * Constructs an instance that runs tasks on the provided {@link Executor}.
+     *
+     * @param executor the {@link Executor} to run tasks on.
+     */
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(Runnable runnable) {
+        this.tasks.add(() -> {
+            try {
+                runnable.run();
+            } finally {
+                this.scheduleNext();
+            }
+        });
+        if (this.active == null) this.scheduleNext();
+    }
+
+    /**
+     * Submits the next task to the backing {@link Executor} if there is one.
+     */
+    private synchronized void scheduleNext() {
+        if ((this.active = this.tasks.poll()) != null) this.executor.execute(this.active);
+    }
+}
@@ -48,7 +48,7 @@ public class StreamUtil {
      * @return the running {@link Thread} being used to read and write to the streams.
      */
     public static Thread readConstantly(InputStream input, OutputStream output, int bufferSize, String threadName) {
-        Thread thread = new Thread(() -> {
+        Thread thread = ThreadMaker.getThread(ThreadMaker.BACKEND, threadName, true, () -> {
             int size;
             byte[] buffer = new byte[bufferSize];
             try {
@@ -60,8 +60,7 @@ public class StreamUtil {
             } catch (IOException e) {
                 Log.ERROR.log("IOException reading stream fully for thread: " + threadName, e);
             }
-        }, threadName);
-        thread.setDaemon(false);
+        });
         thread.start();
         return thread;
     }
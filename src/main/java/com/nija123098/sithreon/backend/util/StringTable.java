@@ -0,0 +1,160 @@
+package com.nija123098.sithreon.backend.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of strings that have been sent over a connection so
+ * they can be referenced by a small id instead of being repeated.
+ * <p>
+ * A connection has one instance for each direction, both starting
+ * empty with the connection, so a reconnect starts with new tables.
+ * The instance for the encoding or decoding in progress is bound to
+ * the thread with {@link StringTable#bind(StringTable)}, strings put
+ * while no table is bound are always sent in full.
+ * <p>
+ * A string is put as a variable length tag, 0 for a string which follows
+ * and is not added, 1 for a string which follows and is added with the
+ * next id, or the id of a previously added string plus 2.
+ * Strings must be decoded in the order they were encoded.
+ *
+ * @author nija123098
+ */
+public class StringTable {
+    /**
+     * The maximum number of strings a table holds, further strings are sent in full.
+     */
+    private static final int MAXIMUM_SIZE = 1 << 12;
+
+    /**
+     * The maximum length of a string to add to a table.
+     */
+    private static final int MAXIMUM_LENGTH = 1 << 9;
+
+    /**
+     * The tag for a string which follows and is not added.
+     */
+    private static final int LITERAL = 0;
+
+    /**
+     * The tag for a string which follows and is added.
+     */
+    private static final int LITERAL_ADDED = 1;
+
+    /**
+     * The number to add to an id for it's tag.
+     */
+    private static final int REFERENCE_OFFSET = 2;
+
+    /**
+     * The table bound to the current thread.
+     */
+    private static final ThreadLocal<StringTable> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The ids of added strings, for encoding.
+     */
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * The added strings by id, for decoding.
+     */
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Binds a table to the current thread.
+     *
+     * @param table the table to bind, or null to unbind.
+     * @return the previously bound table, to restore once done.
+     */
+    public static StringTable bind(StringTable table) {
+        StringTable previous = CURRENT.get();
+        if (table == null) CURRENT.remove();
+        else CURRENT.set(table);
+        return previous;
+    }
+
+    /**
+     * Marks the strings added for encoding so far, to roll back to if an encoding fails.
+     *
+     * @return the mark.
+     */
+    public int mark() {
+        return this.ids.size();
+    }
+
+    /**
+     * Forgets the strings added for encoding since a mark, since they will never be decoded.
+     *
+     * @param mark the mark from {@link StringTable#mark()}.
+     */
+    public void rollback(int mark) {
+        if (this.ids.size() > mark) this.ids.values().removeIf(id -> id >= mark);
+    }
+
+    /**
+     * Gets the maximum number of bytes a string takes when put.
+     * <p>
+     * A string repeated in one encoding takes less than this after it's first occurrence.
+     *
+     * @param s the string.
+     * @return the maximum number of bytes the string takes.
+     */
+    public static int stringSize(String s) {
+        StringTable table = CURRENT.get();
+        Integer id = table == null ? null : table.ids.get(s);
+        if (id != null) return BinaryUtil.varIntSize(id + REFERENCE_OFFSET);
+        return 1 + BinaryUtil.stringSize(s);
+    }
+
+    /**
+     * Puts a string, as a reference if it is in the bound table.
+     *
+     * @param buffer the buffer to put to.
+     * @param s      the string.
+     */
+    public static void putString(ByteBuffer buffer, String s) {
+        StringTable table = CURRENT.get();
+        if (table == null) {
+            BinaryUtil.putVarInt(buffer, LITERAL);
+            BinaryUtil.putString(buffer, s);
+            return;
+        }
+        Integer id = table.ids.get(s);
+        if (id != null) {
+            BinaryUtil.putVarInt(buffer, id + REFERENCE_OFFSET);
+            return;
+        }
+        if (table.ids.size() < MAXIMUM_SIZE && s.length() <= MAXIMUM_LENGTH) {
+            table.ids.put(s, table.ids.size());
+            BinaryUtil.putVarInt(buffer, LITERAL_ADDED);
+        } else BinaryUtil.putVarInt(buffer, LITERAL);
+        BinaryUtil.putString(buffer, s);
+    }
+
+    /**
+     * Gets a string put with {@link StringTable#putString(ByteBuffer, String)}.
+     *
+     * @param buffer the buffer to get from.
+     * @return the string.
+     * @throws IllegalArgumentException if the string references an id not in the bound table.
+     */
+    public static String getString(ByteBuffer buffer) {
+        int tag = BinaryUtil.getVarInt(buffer);
+        if (tag == LITERAL) return BinaryUtil.getString(buffer);
+        StringTable table = CURRENT.get();
+        if (table == null) throw new IllegalArgumentException("String table reference without a table");
+        if (tag == LITERAL_ADDED) {
+            String s = BinaryUtil.getString(buffer);
+            if (table.strings.size() >= MAXIMUM_SIZE) throw new IllegalArgumentException("String table full");
+            table.strings.add(s);
+            return s;
+        }
+        int id = tag - REFERENCE_OFFSET;
+        if (id < 0 || id >= table.strings.size()) throw new IllegalArgumentException("Unknown string table id " + id);
+        return table.strings.get(id);
+    }
+}
@@ -2,10 +2,10 @@ package com.nija123098.sithreon.backend.util;
 
 import com.nija123098.sithreon.backend.util.throwable.NoReturnException;
 import com.nija123098.sithreon.backend.util.throwable.SithreonSecurityException;
-import jdk.nashorn.api.scripting.URLReader;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -63,7 +63,7 @@ public class StringUtil {
      */
     public static List<String> readRaw(String url) {
         try {
-            BufferedReader reader = new BufferedReader(new URLReader(new URL(url)));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new URL(url).openStream(), StandardCharsets.UTF_8));
             String content;
             List<String> lines = new LinkedList<>();
             while ((content = reader.readLine()) != null) lines.add(content);
@@ -1,7 +1,17 @@
 package com.nija123098.sithreon.backend.util;
 
+import com.nija123098.sithreon.backend.Config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * A utility for making and organizing {@link Thread}s.
+ * <p>
+ * When {@link Config#virtualThreads} is enabled daemon threads are made as virtual threads,
+ * so a thread per connection or process costs little more than it's stack.
+ * Virtual threads do not belong to the requested {@link ThreadGroup}.
  *
  * @author nija123098
  */
@@ -21,8 +31,48 @@ public class ThreadMaker {
      */
     public static final ThreadGroup NETWORK = new ThreadGroup(ALL_THREADS, "Network Threads");
 
+    /**
+     * The {@code Thread.ofVirtual()} method, or null if virtual threads are unsupported.
+     * <p>
+     * Virtual threads are final from Java 21, so they are resolved when
+     * this class is initialized to keep the build targeting Java 17.
+     */
+    private static final Method OF_VIRTUAL;
+
+    /**
+     * The {@code Thread.Builder.name(String)} method, or null if virtual threads are unsupported.
+     */
+    private static final Method NAME;
+
+    /**
+     * The {@code Thread.Builder.unstarted(Runnable)} method, or null if virtual threads are unsupported.
+     */
+    private static final Method UNSTARTED;
+
+    /**
+     * If virtual threads were found to be unavailable, so it is only logged once.
+     */
+    private static final AtomicBoolean VIRTUAL_UNAVAILABLE = new AtomicBoolean();
+
+    static {
+        Method ofVirtual, name, unstarted;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            ofVirtual = name = unstarted = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+    }
+
     /**
      * A utility for making and organizing threads.
+     * <p>
+     * Daemon threads are made as virtual threads if {@link Config#virtualThreads} is enabled and supported.
      *
      * @param group    the {@link ThreadGroup} the thread should belong to.
      * @param name     the name of the thread to make.
@@ -31,8 +81,49 @@ public class ThreadMaker {
      * @return the thread made according to the parameters.
      */
     public static Thread getThread(ThreadGroup group, String name, boolean daemon, Runnable runnable) {
+        if (daemon && Config.virtualThreads) {// virtual threads are always daemon threads
+            Thread thread = getVirtualThread(name, runnable);
+            if (thread != null) return thread;
+        }
+        return getPlatformThread(group, name, daemon, runnable);
+    }
+
+    /**
+     * Makes a thread backed by an operating system thread regardless of {@link Config#virtualThreads},
+     * for threads which block in ways that would hold the carrier of a virtual thread, such as selecting.
+     *
+     * @param group    the {@link ThreadGroup} the thread should belong to.
+     * @param name     the name of the thread to make.
+     * @param daemon   if the thread should be a demon thread.
+     * @param runnable the runnable to execute when the thread is started.
+     * @return the thread made according to the parameters.
+     */
+    public static Thread getPlatformThread(ThreadGroup group, String name, boolean daemon, Runnable runnable) {
         Thread thread = new Thread(group, runnable, name);
         thread.setDaemon(daemon);
         return thread;
     }
+
+    /**
+     * Makes an unstarted virtual thread.
+     *
+     * @param name     the name of the thread to make.
+     * @param runnable the runnable to execute when the thread is started.
+     * @return the virtual thread, or null if virtual threads are unavailable.
+     */
+    private static Thread getVirtualThread(String name, Runnable runnable) {
+        if (OF_VIRTUAL != null) {
+            try {
+                return (Thread) UNSTARTED.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name), runnable);
+            } catch (InvocationTargetException e) {// preview releases without --enable-preview
+                if (!VIRTUAL_UNAVAILABLE.getAndSet(true)) Log.WARN.log("Unable to make virtual threads, using platform threads", e.getCause());
+                return null;
+            } catch (IllegalAccessException e) {
+                if (!VIRTUAL_UNAVAILABLE.getAndSet(true)) Log.WARN.log("Unable to access virtual thread methods, using platform threads", e);
+                return null;
+            }
+        }
+        if (!VIRTUAL_UNAVAILABLE.getAndSet(true)) Log.WARN.log("Virtual threads require Java 21 or later, using platform threads");
+        return null;
+    }
 }
@@ -1,8 +1,12 @@
 package com.nija123098.sithreon.game.management;
 
 import com.nija123098.sithreon.backend.networking.ObjectSerialization;
-import com.nija123098.sithreon.backend.util.ByteHandler;
+import com.nija123098.sithreon.backend.util.BinaryUtil;
 import com.nija123098.sithreon.backend.util.Log;
+import com.nija123098.sithreon.backend.util.StringTable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 /**
  * Represents the arguments for a {@link GameAction} which must be wrapped in this.
@@ -14,23 +18,7 @@ public class GameArguments {// todo make normal names and args, do not transfer
     private Object[] objects;
 
     public GameArguments(byte[] bytes) {
-        ByteHandler byteHandler = new ByteHandler(bytes);
-        Integer argLength = ObjectSerialization.deserialize(Integer.class, byteHandler.getBytes(true, Integer.BYTES));
-        this.objects = new Object[argLength];
-        Integer classLength, objectLength;
-        for (int i = 0; i < argLength; i++) {
-            classLength = ObjectSerialization.deserialize(Integer.class, byteHandler.getBytes(true, Integer.BYTES));
-            String className = ObjectSerialization.deserialize(String.class, byteHandler.getBytes(true, classLength));
-            objectLength = ObjectSerialization.deserialize(Integer.class, byteHandler.getBytes(true, Integer.BYTES));
-            try {
-                this.objects[i] = ObjectSerialization.deserialize(ClassLoader.getSystemClassLoader().loadClass(className), byteHandler.getBytes(true, objectLength));
-            } catch (ClassNotFoundException e) {
-                Log.WARN.log("Unrecognized class while loading arguments: " + className, e);
-            }
-        }
-        if (!byteHandler.isEmpty()) {
-            Log.ERROR.log("Extra bytes left after reading GameArguments: " + byteHandler.size());
-        }
+        this.objects = decode(ByteBuffer.wrap(bytes)).objects;
     }
 
     public GameArguments(Object... objects) {
@@ -43,21 +31,73 @@ public class GameArguments {// todo make normal names and args, do not transfer
      * @return the bytes representing this instance.
      */
     public byte[] getBytes() {
-        ByteHandler bytes = new ByteHandler();
-        bytes.add(ObjectSerialization.serialize(Integer.class, this.objects.length));
+        return ObjectSerialization.serialize(GameArguments.class, this);
+    }
+
+    /**
+     * Gets the maximum number of bytes this instance takes when encoded.
+     *
+     * @return the maximum number of bytes this instance takes.
+     */
+    public int size() {
+        int size = Integer.BYTES;
+        for (Object object : this.objects)
+            size += StringTable.stringSize(object.getClass().getName()) + Integer.BYTES + size(object);
+        return size;
+    }
+
+    /**
+     * Encodes this instance, the number of arguments followed by each argument's class name and encoding.
+     *
+     * @param out the buffer to put to.
+     */
+    public void encode(ByteBuffer out) {
+        out.putInt(this.objects.length);
+        int lengthIndex;
         for (Object object : this.objects) {
-            Class<?> clazz = object.getClass();
-            bytes.add(ObjectSerialization.serialize(Integer.class, clazz.getName().length()));
-            bytes.add(ObjectSerialization.serialize(String.class, clazz.getName()));// Should probably add these methods to the ByteHandler
-            byte[] objectBytes = getBytes(object);
-            bytes.add(ObjectSerialization.serialize(Integer.class, objectBytes.length));
-            bytes.add(objectBytes);
+            StringTable.putString(out, object.getClass().getName());
+            lengthIndex = out.position();
+            out.position(lengthIndex + Integer.BYTES);
+            encode(object, out);
+            out.putInt(lengthIndex, out.position() - lengthIndex - Integer.BYTES);
         }
-        return bytes.getBytes();
     }
 
-    private static <E> byte[] getBytes(E e) {
-        return ObjectSerialization.serialize((Class<? super E>) e.getClass(), e);
+    /**
+     * Decodes an instance from the remaining bytes of the buffer.
+     *
+     * @param in the buffer to get from.
+     * @return the decoded instance.
+     */
+    public static GameArguments decode(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / (1 + Integer.BYTES)) throw new BufferUnderflowException();// each has a class name and length
+        Object[] objects = new Object[count];
+        String className;
+        ByteBuffer objectBytes;
+        for (int i = 0; i < objects.length; i++) {
+            className = StringTable.getString(in);
+            objectBytes = BinaryUtil.getSlice(in, in.getInt());
+            try {
+                objects[i] = ObjectSerialization.decode(ClassLoader.getSystemClassLoader().loadClass(className), objectBytes);
+            } catch (ClassNotFoundException e) {
+                Log.WARN.log("Unrecognized class while loading arguments: " + className, e);
+            }
+        }
+        if (in.hasRemaining()) {
+            Log.ERROR.log("Extra bytes left after reading GameArguments: " + in.remaining());
+        }
+        return new GameArguments(objects);
+    }
+
+    @SuppressWarnings("unchecked")// the class of e is a Class<E>
+    private static <E> int size(E e) {
+        return ObjectSerialization.size((Class<E>) e.getClass(), e);
+    }
+
+    @SuppressWarnings("unchecked")// the class of e is a Class<E>
+    private static <E> void encode(E e, ByteBuffer out) {
+        ObjectSerialization.encode((Class<E>) e.getClass(), e, out);
     }
 
     /**
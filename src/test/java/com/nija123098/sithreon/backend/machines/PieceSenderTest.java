@@ -0,0 +1,77 @@
+package com.nija123098.sithreon.backend.machines;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PieceSenderTest {
+
+    private static final int PIECE_SIZE = 4;
+
+    @Test
+    public void completesForEveryWindow() {
+        for (int window = 1; window <= 9; window++) {
+            for (int pieces = 0; pieces <= 3 * window + 2; pieces++) transfer(window, pieces);
+        }
+    }
+
+    @Test
+    public void emptyContents() {
+        Map<String, Long> lengths = new HashMap<>();
+        lengths.put("empty", 0L);
+        PieceSender sender = new PieceSender(1, PIECE_SIZE, lengths::get);
+        sender.add("empty");
+        List<Long> written = new ArrayList<>();
+        assertTrue(sender.send(0, (hash, offset, length) -> written.add(length)));
+        assertEquals(1, written.size());
+        assertEquals(0L, (long) written.get(0));
+        assertFalse(sender.send(1, (hash, offset, length) -> fail()));// reported once
+    }
+
+    /**
+     * Sends the number of pieces split over files of several lengths,
+     * the receiver granting credit as {@link GameClient} does.
+     */
+    private static void transfer(int window, int pieces) {
+        Map<String, Long> lengths = new HashMap<>();
+        List<String> hashes = new ArrayList<>();
+        for (int remaining = pieces, i = 0; remaining > 0; i++) {
+            int filePieces = Math.min(remaining, i % 3 + 1);
+            hashes.add("file" + i);
+            lengths.put("file" + i, (long) (filePieces - 1) * PIECE_SIZE + 1 + i % PIECE_SIZE);
+            remaining -= filePieces;
+        }
+        PieceSender sender = new PieceSender(window, PIECE_SIZE, lengths::get);
+        hashes.forEach(sender::add);
+        Deque<String> inFlight = new ArrayDeque<>();
+        int[] sent = new int[1];
+        PieceSender.PieceWriter writer = (hash, offset, length) -> {
+            inFlight.add(hash + "@" + offset);
+            ++sent[0];
+        };
+        boolean complete = sender.send(0, writer);
+        assertEquals("window " + window + " with " + pieces + " pieces did not complete with the last piece", sent[0] == pieces, complete);
+        int received = 0, ungranted = 0;
+        while (!inFlight.isEmpty()) {
+            assertTrue("window " + window + " exceeded", inFlight.size() <= window);
+            inFlight.poll();
+            ++received;
+            if (++ungranted >= PieceSender.getGrantThreshold(window)) {
+                boolean completed = sender.send(ungranted, writer);
+                assertFalse("completed twice", complete && completed);
+                complete |= completed;
+                assertEquals("window " + window + " with " + pieces + " pieces did not complete with the last piece", sent[0] == pieces, complete);
+                ungranted = 0;
+            }
+        }
+        assertEquals(pieces, received);
+        assertTrue("window " + window + " with " + pieces + " pieces never completed", complete);
+    }
+}
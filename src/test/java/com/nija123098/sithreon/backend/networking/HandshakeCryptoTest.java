@@ -0,0 +1,40 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class HandshakeCryptoTest {
+
+    @Test
+    public void concurrentRoundTrips() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair pair = generator.generateKeyPair();
+        Config.privateKey = pair.getPrivate();
+        try {
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                byte[] challenge = SessionTicket.newNonce();
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        assertTrue(Arrays.equals(challenge, HandshakeCrypto.decrypt(HandshakeCrypto.encrypt(pair.getPublic(), challenge))));
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            Config.privateKey = null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.Machine;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LoopbackTransportTest {
+
+    private static final int PORT = 65_001;
+
+    @Test
+    public void authenticateAndHeartbeat() throws Exception {
+        Boolean authenticate = Config.authenticateMachines, loopback = Config.loopbackTransport;
+        Config.authenticateMachines = false;
+        Config.loopbackTransport = true;
+        Machine server = new Machine() {
+        }, client = new Machine() {
+        };
+        try {
+            new SocketAcceptor(server, PORT);
+            TransferSocket socket = new TransferSocket(client, "unused", PORT);
+            CompletableFuture<TransferSocket> authenticated = new CompletableFuture<>();
+            socket.registerAuthenticationAction(authenticated::complete);
+            assertSame(socket, authenticated.get(10, TimeUnit.SECONDS));
+            socket.write(MachineAction.HEARTBEAT, System.nanoTime());
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (socket.getRoundTripTime() == -1 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            assertTrue(socket.getRoundTripTime() >= 0);
+            server.close();
+            deadline = System.currentTimeMillis() + 10_000;
+            while (!socket.isClosed() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            assertTrue(socket.isClosed());
+        } finally {
+            server.close();
+            client.close();
+            Config.authenticateMachines = authenticate;
+            Config.loopbackTransport = loopback;
+        }
+    }
+
+    @Test
+    public void slowInlineAction() throws Exception {
+        Boolean authenticate = Config.authenticateMachines, loopback = Config.loopbackTransport;
+        Long interval = Config.heartbeatInterval;
+        Config.authenticateMachines = false;
+        Config.loopbackTransport = true;
+        Config.heartbeatInterval = 100L;
+        CompletableFuture<Void> acted = new CompletableFuture<>();
+        Machine server = new Machine() {
+            @Override
+            protected void notifyReady(ManagedMachineType machineType, TransferSocket socket) {
+                try {
+                    Thread.sleep(Config.heartbeatInterval * (Config.heartbeatMissLimit + 3));
+                } catch (InterruptedException e) {
+                    acted.completeExceptionally(e);
+                }
+                acted.complete(null);
+            }
+        }, client = new Machine() {
+        };
+        try {
+            new SocketAcceptor(server, PORT + 3);
+            TransferSocket socket = new TransferSocket(client, "unused", PORT + 3);
+            CompletableFuture<TransferSocket> authenticated = new CompletableFuture<>();
+            socket.registerAuthenticationAction(authenticated::complete);
+            authenticated.get(10, TimeUnit.SECONDS);
+            socket.write(MachineAction.READY_TO_SERVE, ManagedMachineType.CODE_CHECK);
+            acted.get(10, TimeUnit.SECONDS);
+            Thread.sleep(Config.heartbeatInterval * 2);// heartbeats queued during the action are read
+            assertFalse(socket.isClosed());
+        } finally {
+            server.close();
+            client.close();
+            Config.authenticateMachines = authenticate;
+            Config.loopbackTransport = loopback;
+            Config.heartbeatInterval = interval;
+        }
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void closeTwice() throws Exception {
+        LoopbackTransport.Server server = LoopbackTransport.listen(PORT + 2);
+        LoopbackTransport.connect(PORT + 2);
+        server.close();
+        server.close();
+        server.accept();
+    }
+
+    @Test(expected = ConnectException.class)
+    public void refused() throws Exception {
+        LoopbackTransport.connect(PORT + 1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.nija123098.sithreon.backend.networking;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MachineActionTest {
+
+    private static byte[] write(MachineAction action, Object... args) {
+        ByteBuffer buffer = ByteBuffer.allocate(action.size(args));
+        action.write(buffer, args);
+        assertFalse(buffer.hasRemaining());
+        return buffer.array();
+    }
+
+    @Test
+    public void writeRead() {
+        byte[] bytes = write(MachineAction.REQUEST_CERTIFICATE, BigInteger.valueOf(1234567));
+        assertEquals(MachineAction.REQUEST_CERTIFICATE.ordinal(), bytes[0]);
+        Object[] args = MachineAction.REQUEST_CERTIFICATE.read(null, ByteBuffer.wrap(bytes));
+        assertNotNull(args);
+        assertArrayEquals(new Object[]{BigInteger.valueOf(1234567)}, args);
+    }
+
+    @Test
+    public void noArguments() {
+        assertArrayEquals(new byte[]{(byte) MachineAction.CLOSE_ALL.ordinal()}, write(MachineAction.CLOSE_ALL));
+        assertEquals(0, MachineAction.CLOSE_ALL.read(null, ByteBuffer.wrap(write(MachineAction.CLOSE_ALL))).length);
+    }
+
+    @Test
+    public void malformed() {
+        byte[] bytes = write(MachineAction.REQUEST_CERTIFICATE, BigInteger.TEN);
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertNull(MachineAction.REQUEST_CERTIFICATE.read(null, ByteBuffer.wrap(truncated)));
+        byte[] extended = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, extended, 0, bytes.length);
+        assertNull(MachineAction.REQUEST_CERTIFICATE.read(null, ByteBuffer.wrap(extended)));
+    }
+
+    @Test
+    public void oversizedArray() {
+        ByteBuffer frame = ByteBuffer.allocate(1 + Integer.BYTES + Integer.BYTES);
+        frame.put((byte) MachineAction.SEND_CERTIFICATE_CHAIN.ordinal()).putInt(Integer.BYTES).putInt(Integer.MAX_VALUE);
+        frame.flip();
+        assertNull(MachineAction.SEND_CERTIFICATE_CHAIN.read(null, frame));
+    }
+
+    @Test
+    public void unknownOrdinal() {
+        ByteBuffer frame = ByteBuffer.allocate(1 + Integer.BYTES + 1);
+        frame.put((byte) MachineAction.READY_TO_SERVE.ordinal()).putInt(1).put((byte) 100);
+        frame.flip();
+        assertNull(MachineAction.READY_TO_SERVE.read(null, frame));
+    }
+}
@@ -1,9 +1,14 @@
 package com.nija123098.sithreon.backend.networking;
 
+import com.nija123098.sithreon.backend.util.BinaryUtil;
+import com.nija123098.sithreon.game.management.GameArguments;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class ObjectSerializationTest {
 
@@ -49,4 +54,47 @@ public class ObjectSerializationTest {
         test(byte[].class, new byte[0], new byte[0]);
         test(byte[].class, new byte[]{1, 2, 3}, new byte[]{1, 2, 3});
     }
+
+    @Test
+    public void testEnumArray() {
+        MachineAction[] actions = {MachineAction.CLOSE_ALL, MachineAction.RUN_GAME};
+        byte[] bytes = ObjectSerialization.serialize(MachineAction[].class, actions);
+        assertArrayEquals(new byte[]{0, 0, 0, 2, 0, 0, 0, 1, (byte) MachineAction.CLOSE_ALL.ordinal(), 0, 0, 0, 1, (byte) MachineAction.RUN_GAME.ordinal()}, bytes);
+        assertArrayEquals(actions, ObjectSerialization.deserialize(MachineAction[].class, bytes));
+    }
+
+    @Test
+    public void testEncodeInPlace() {
+        ByteBuffer buffer = ByteBuffer.allocate(3 + ObjectSerialization.size(String.class, "abc") + ObjectSerialization.size(Long.class, 7L));
+        buffer.position(3);
+        ObjectSerialization.encode(String.class, "abc", buffer);
+        ObjectSerialization.encode(Long.class, 7L, buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.position(3);
+        assertEquals("abc", ObjectSerialization.decode(String.class, BinaryUtil.getSlice(buffer, 3)));
+        assertEquals(Long.valueOf(7L), ObjectSerialization.decode(Long.class, buffer));
+    }
+
+    @Test
+    public void testByteBufferView() {
+        byte[] frame = {1, 2, 3, 4, 5};
+        ByteBuffer in = ByteBuffer.wrap(frame, 1, 3);
+        ByteBuffer view = ObjectSerialization.decode(ByteBuffer.class, in);
+        assertFalse(in.hasRemaining());
+        assertEquals(3, view.remaining());
+        assertEquals(2, view.get(0));
+        frame[1] = 9;
+        assertEquals(9, view.get(0));// a view, not a copy
+        ByteBuffer out = ByteBuffer.allocate(ObjectSerialization.size(ByteBuffer.class, view));
+        ObjectSerialization.encode(ByteBuffer.class, view, out);
+        assertArrayEquals(new byte[]{9, 3, 4}, out.array());
+        assertEquals(3, view.remaining());
+    }
+
+    @Test
+    public void testGameArguments() {
+        GameArguments arguments = new GameArguments("a string", 5, true);
+        GameArguments decoded = ObjectSerialization.deserialize(GameArguments.class, ObjectSerialization.serialize(GameArguments.class, arguments));
+        assertArrayEquals(arguments.getObjects(), decoded.getObjects());
+    }
 }
@@ -0,0 +1,68 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OneUseCodeRegistryTest {
+
+    @Test
+    public void useOnce() {
+        OneUseCodeRegistry registry = new OneUseCodeRegistry();
+        String code = registry.issue();
+        assertNotEquals(code, registry.issue());
+        assertTrue(registry.use(code));
+        assertFalse(registry.use(code));
+        assertFalse(registry.use("unknown"));
+        assertEquals(0, registry.getExpiredCount());
+    }
+
+    @Test
+    public void expiry() {
+        long lifetime = Config.oneUseCodeLifetime;
+        Config.oneUseCodeLifetime = -1L;
+        try {
+            OneUseCodeRegistry registry = new OneUseCodeRegistry();
+            String code = registry.issue();
+            assertFalse(registry.use(code));
+            registry.issue();
+            registry.issue();// purges the previous
+            assertEquals(1, registry.size());
+            assertEquals(2, registry.getExpiredCount());
+        } finally {
+            Config.oneUseCodeLifetime = lifetime;
+        }
+    }
+
+    @Test
+    public void cap() {
+        int maximum = Config.maximumOneUseCodes;
+        Config.maximumOneUseCodes = 2;
+        try {
+            OneUseCodeRegistry registry = new OneUseCodeRegistry();
+            String first = registry.issue(), second = registry.issue(), third = registry.issue();
+            assertEquals(2, registry.size());
+            assertEquals(1, registry.getExpiredCount());
+            assertTrue(registry.use(third));
+            assertTrue(registry.use(first) ^ registry.use(second));// either may expire first
+        } finally {
+            Config.maximumOneUseCodes = maximum;
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void nonPositiveCap() {
+        int maximum = Config.maximumOneUseCodes;
+        Config.maximumOneUseCodes = 0;
+        try {
+            OneUseCodeRegistry registry = new OneUseCodeRegistry();
+            String first = registry.issue(), second = registry.issue();
+            assertEquals(1, registry.size());
+            assertFalse(registry.use(first));
+            assertTrue(registry.use(second));
+        } finally {
+            Config.maximumOneUseCodes = maximum;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.nija123098.sithreon.backend.networking;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RoundTripEstimatorTest {
+
+    @Test
+    public void unmeasured() {
+        RoundTripEstimator estimator = new RoundTripEstimator();
+        assertEquals(-1, estimator.getRoundTripTime());
+        assertEquals(-1, estimator.getJitter());
+        assertEquals(0, estimator.getSampleCount());
+    }
+
+    @Test
+    public void firstSample() {
+        RoundTripEstimator estimator = new RoundTripEstimator();
+        estimator.sample(800);
+        assertEquals(800, estimator.getRoundTripTime());
+        assertEquals(400, estimator.getJitter());
+        assertEquals(1, estimator.getSampleCount());
+    }
+
+    @Test
+    public void smoothing() {
+        RoundTripEstimator estimator = new RoundTripEstimator();
+        estimator.sample(800);
+        estimator.sample(1600);
+        assertEquals(900, estimator.getRoundTripTime());
+        assertEquals(500, estimator.getJitter());
+        for (int i = 0; i < 200; i++) estimator.sample(1600);
+        assertEquals(1600, estimator.getRoundTripTime(), 8);
+        assertEquals(0, estimator.getJitter(), 12);
+    }
+}
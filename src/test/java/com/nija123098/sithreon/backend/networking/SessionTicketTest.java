@@ -0,0 +1,98 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.command.commands.AuthenticationWizardCommand;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SessionTicketTest {
+
+    private static String permissionOID;
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        permissionOID = Config.certificatePermissionOID;
+        if (Config.certificatePermissionOID == null) Config.certificatePermissionOID = "1.3.6.1.4.1.55555.1";
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @AfterClass
+    public static void restoreConfig() {
+        Config.certificatePermissionOID = permissionOID;
+    }
+
+    /**
+     * Generates a trusted root certificate.
+     */
+    private static Certificate trustedCertificate() {
+        Certificate certificate = AuthenticationWizardCommand.generateRootCertificate(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1), keyPair.getPublic(), keyPair.getPrivate(), MachineAction.values(), "CN=Session Ticket Test");
+        certificate.setTrust(true);
+        return certificate;
+    }
+
+    @Test
+    public void proofs() {
+        Certificate certificate = trustedCertificate();
+        byte[] acceptingChallenge = SessionTicket.newNonce(), connectingChallenge = SessionTicket.newNonce();
+        SessionTicket issued = SessionTicket.issue(SessionTicket.deriveSecret(acceptingChallenge, connectingChallenge), certificate, EnumSet.of(MachineAction.GAME_ACTION));
+        SessionTicket held = new SessionTicket(issued.getId(), SessionTicket.deriveSecret(acceptingChallenge, connectingChallenge), Long.MAX_VALUE, certificate, Collections.emptySet());
+        assertSame(issued, SessionTicket.getIssued(issued.getId()));
+        assertEquals(EnumSet.of(MachineAction.GAME_ACTION), issued.getPermissions());
+        byte[] connectingNonce = SessionTicket.newNonce(), acceptingNonce = SessionTicket.newNonce();
+        byte[] acceptingProof = issued.prove(true, connectingNonce, acceptingNonce);
+        assertTrue(held.check(true, acceptingProof, connectingNonce, acceptingNonce));
+        assertFalse(issued.check(false, acceptingProof, connectingNonce, acceptingNonce));// not reflectable
+        assertFalse(held.check(true, acceptingProof, connectingNonce, SessionTicket.newNonce()));// not replayable
+        SessionTicket other = new SessionTicket(issued.getId(), SessionTicket.deriveSecret(connectingChallenge, acceptingChallenge), Long.MAX_VALUE, certificate, Collections.emptySet());
+        assertFalse(other.check(true, acceptingProof, connectingNonce, acceptingNonce));
+    }
+
+    @Test
+    public void expiry() {
+        Certificate certificate = trustedCertificate();
+        SessionTicket.hold("expired", new SessionTicket("a", new byte[1], System.currentTimeMillis() - 1, certificate, Collections.emptySet()));
+        assertNull(SessionTicket.getHeld("expired"));
+        SessionTicket ticket = new SessionTicket("b", new byte[1], Long.MAX_VALUE, certificate, Collections.emptySet());
+        SessionTicket.hold("held", ticket);
+        assertSame(ticket, SessionTicket.getHeld("held"));
+        SessionTicket.forget("held", ticket);
+        assertNull(SessionTicket.getHeld("held"));
+        assertNull(SessionTicket.getIssued("unknown"));
+    }
+
+    @Test
+    public void revoked() {
+        Certificate certificate = trustedCertificate();
+        SessionTicket issued = SessionTicket.issue(new byte[1], certificate, EnumSet.of(MachineAction.GAME_ACTION));
+        SessionTicket held = new SessionTicket(issued.getId(), new byte[1], Long.MAX_VALUE, certificate, Collections.emptySet());
+        SessionTicket.hold("revoked", held);
+        assertSame(issued, SessionTicket.getIssued(issued.getId()));
+        assertSame(held, SessionTicket.getHeld("revoked"));
+        certificate.setTrust(false);
+        assertFalse(issued.isTrusted());
+        assertNull(SessionTicket.getIssued(issued.getId()));
+        assertNull(SessionTicket.getHeld("revoked"));
+        certificate.setTrust(true);
+        assertNull("the ticket was dropped", SessionTicket.getIssued(issued.getId()));
+        assertNull("the ticket was dropped", SessionTicket.getHeld("revoked"));
+    }
+
+    @Test
+    public void noCertificate() {
+        SessionTicket.hold("uncertified", new SessionTicket("c", new byte[1], Long.MAX_VALUE, null, Collections.emptySet()));
+        assertNull(SessionTicket.getHeld("uncertified"));
+    }
+}
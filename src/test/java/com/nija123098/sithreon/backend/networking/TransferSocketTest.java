@@ -0,0 +1,72 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.util.BufferPool;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+public class TransferSocketTest {
+
+    /**
+     * Frame sizes on either side of the lengths the {@link BufferPool} hands out.
+     */
+    private static final int[] SIZES = {512, 1000, 1020, 1021, 1022, 1023, 1024, 1025, 2044, 2045, 2047, 2048, 2049, 4093, 4096, 65_536};
+
+    @Test
+    public void compressionRoundTrip() throws DataFormatException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        Inflater inflater = new Inflater();
+        Random random = new Random(0);
+        try {
+            for (int size : SIZES) {
+                for (boolean compressible : new boolean[]{true, false}) {
+                    byte[] body = new byte[size];
+                    if (compressible) for (int i = 0; i < size; i++) body[i] = (byte) (i % 7);
+                    else random.nextBytes(body);
+                    body[0] = 1;// not the compressed marker
+                    ByteBuffer frame = ByteBuffer.wrap(BufferPool.acquire(Integer.BYTES + size), 0, Integer.BYTES + size);
+                    frame.putInt(0, size);
+                    System.arraycopy(body, 0, frame.array(), Integer.BYTES, size);
+                    ByteBuffer written = TransferSocket.compress(deflater, frame);
+                    if (written == frame) {// compressing did not make it smaller
+                        assertFalse("size " + size + " was not compressed", compressible);
+                        continue;
+                    }
+                    assertEquals(written.remaining() - Integer.BYTES, written.getInt(0));
+                    written.position(Integer.BYTES);
+                    byte[] original = new byte[size];
+                    assertEquals("size " + size, size, TransferSocket.inflate(inflater, written, original, size));
+                    assertArrayEquals("size " + size, body, original);
+                    BufferPool.release(written.array());
+                }
+            }
+        } finally {
+            deflater.end();
+            inflater.end();
+        }
+    }
+
+    @Test
+    public void truncated() throws DataFormatException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        Inflater inflater = new Inflater();
+        try {
+            int size = 2048;
+            ByteBuffer frame = ByteBuffer.wrap(BufferPool.acquire(Integer.BYTES + size), 0, Integer.BYTES + size);
+            Arrays.fill(frame.array(), Integer.BYTES, Integer.BYTES + size, (byte) 3);
+            ByteBuffer written = TransferSocket.compress(deflater, frame);
+            written.position(Integer.BYTES).limit(written.limit() - 1);
+            assertEquals(-1, TransferSocket.inflate(inflater, written, new byte[size], size));
+        } finally {
+            deflater.end();
+            inflater.end();
+        }
+    }
+}
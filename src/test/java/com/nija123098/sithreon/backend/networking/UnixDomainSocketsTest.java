@@ -0,0 +1,29 @@
+package com.nija123098.sithreon.backend.networking;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class UnixDomainSocketsTest {
+
+    @Test
+    public void exchange() throws Exception {
+        Path file = Files.createTempDirectory("sithreon").resolve("test.sock");
+        Files.createFile(file);// left by an earlier binding
+        try (ServerSocketChannel server = UnixDomainSockets.bind(file); SocketChannel client = UnixDomainSockets.connect(file); SocketChannel accepted = server.accept()) {
+            client.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            ByteBuffer received = ByteBuffer.allocate(3);
+            while (received.hasRemaining()) accepted.read(received);
+            assertArrayEquals(new byte[]{1, 2, 3}, received.array());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(file.getParent());
+        }
+    }
+}
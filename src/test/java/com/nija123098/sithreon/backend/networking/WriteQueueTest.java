@@ -0,0 +1,91 @@
+package com.nija123098.sithreon.backend.networking;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.util.BufferPool;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class WriteQueueTest {
+
+    private static PendingWrite frame(int payload) {
+        ByteBuffer frame = ByteBuffer.wrap(BufferPool.acquire(Integer.BYTES + payload));
+        frame.putInt(payload);
+        frame.position(Integer.BYTES + payload);
+        frame.flip();
+        return new PendingWrite(frame);
+    }
+
+    @Test
+    public void interactivePreemptsBulk() {
+        int chunkSize = Config.transferChunkSize;
+        Config.transferChunkSize = 10;
+        try {
+            WriteQueue queue = new WriteQueue();
+            PendingWrite bulk = frame(25);
+            queue.add(bulk, Lane.BULK);
+            PendingWrite first = queue.poll();
+            assertTrue(first.isChunk());
+            assertEquals(10 | PendingWrite.CHUNK_FLAG, first.getHeader().getInt(0));
+            PendingWrite interactive = frame(3);
+            queue.add(interactive, Lane.INTERACTIVE);
+            assertSame(interactive, queue.poll());
+            assertNull(interactive.getHeader());
+            PendingWrite second = queue.poll();
+            PendingWrite last = queue.poll();
+            assertEquals(10 | PendingWrite.CHUNK_FLAG, second.getHeader().getInt(0));
+            assertEquals(5 | PendingWrite.CHUNK_FLAG | PendingWrite.FINAL_FLAG, last.getHeader().getInt(0));
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+            first.complete();
+            second.complete();
+            assertFalse(bulk.getFuture().isDone());
+            last.complete();
+            assertTrue(bulk.getFuture().isDone());
+        } finally {
+            Config.transferChunkSize = chunkSize;
+        }
+    }
+
+    @Test
+    public void failPartialBulk() {
+        WriteQueue queue = new WriteQueue();
+        PendingWrite bulk = frame(Config.transferChunkSize * 2);
+        queue.add(bulk, Lane.BULK);
+        assertNotNull(queue.poll());
+        assertFalse(queue.isEmpty());
+        queue.failAll(new IllegalStateException());
+        assertTrue(bulk.getFuture().isCompletedExceptionally());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void regionChunks() throws IOException {
+        int chunkSize = Config.transferChunkSize;
+        Config.transferChunkSize = 10;
+        Path file = Files.createTempFile("region", null);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WriteQueue queue = new WriteQueue();
+            ByteBuffer frame = frame(2).getFrame();
+            PendingWrite bulk = new PendingWrite(frame, channel, 0, 13);
+            queue.add(bulk, Lane.BULK);
+            PendingWrite first = queue.poll();
+            assertEquals(2, first.getFrame().remaining());
+            assertEquals(10 | PendingWrite.CHUNK_FLAG, first.getHeader().getInt(0));
+            PendingWrite last = queue.poll();
+            assertEquals(0, last.getFrame().remaining());
+            assertEquals(5 | PendingWrite.CHUNK_FLAG | PendingWrite.FINAL_FLAG, last.getHeader().getInt(0));
+            assertTrue(queue.isEmpty());
+        } finally {
+            Config.transferChunkSize = chunkSize;
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.nija123098.sithreon.backend.objects;
+
+import com.nija123098.sithreon.backend.Config;
+import com.nija123098.sithreon.backend.networking.ObjectSerialization;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectEncodingTest {
+    private static final String HASH1 = "0123456789abcdef0123456789abcdef01234567";
+    private static final String HASH2 = "fedcba9876543210fedcba9876543210fedcba98";
+
+    @BeforeClass
+    public static void setup() {
+        Config.checkRepositoryValidity = false;
+    }
+
+    private static Match makeMatch() {
+        Team first = new Team(Collections.singletonList(new TeamMember(Repository.getRepo("https://example.com/b"), HASH1)));
+        Team second = new Team(Arrays.asList(new TeamMember(Repository.getRepo("https://example.com/c"), HASH2), new TeamMember(Repository.getRepo("https://example.com/a"), HASH1)));
+        return new Match(Arrays.asList(first, second), 1_539_000_000_000L);
+    }
+
+    @Test
+    public void match() {
+        Match match = makeMatch();
+        byte[] bytes = ObjectSerialization.serialize(Match.class, match);
+        assertTrue(bytes.length < match.toString().length());
+        Match decoded = ObjectSerialization.deserialize(Match.class, bytes);
+        assertEquals(match, decoded);
+        assertEquals(match.toString(), decoded.toString());
+        for (int i = 0; i < match.getTeams().size(); i++)
+            assertEquals(match.getTeams().get(i).getTeamNumber(), decoded.getTeams().get(i).getTeamNumber());
+    }
+
+    @Test
+    public void matchUp() {
+        MatchUp matchUp = makeMatch().getMatchUp();
+        assertEquals(matchUp.toString(), ObjectSerialization.deserialize(MatchUp.class, ObjectSerialization.serialize(MatchUp.class, matchUp)).toString());
+    }
+
+    @Test
+    public void competitor() {
+        Competitor competitor = makeMatch().getCompetitors().get(1);
+        assertEquals(competitor, ObjectSerialization.deserialize(Competitor.class, ObjectSerialization.serialize(Competitor.class, competitor)));
+    }
+
+    @Test(expected = BufferUnderflowException.class)
+    public void oversizedCount() {
+        ObjectEncoding.getMatch(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0}));// claims 2^31 - 1 teams
+    }
+}
@@ -0,0 +1,57 @@
+package com.nija123098.sithreon.backend.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class BinaryUtilTest {
+
+    @Test
+    public void varInt() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        int[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE};
+        for (int value : values) {
+            int position = buffer.position();
+            BinaryUtil.putVarInt(buffer, value);
+            assertEquals(BinaryUtil.varIntSize(value), buffer.position() - position);
+        }
+        buffer.flip();
+        for (int value : values) assertEquals(value, BinaryUtil.getVarInt(buffer));
+    }
+
+    @Test
+    public void varLong() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        BinaryUtil.putVarLong(buffer, 1_539_000_000_000L);
+        BinaryUtil.putVarLong(buffer, Long.MAX_VALUE);
+        assertEquals(BinaryUtil.varLongSize(1_539_000_000_000L) + BinaryUtil.varLongSize(Long.MAX_VALUE), buffer.position());
+        buffer.flip();
+        assertEquals(1_539_000_000_000L, BinaryUtil.getVarLong(buffer));
+        assertEquals(Long.MAX_VALUE, BinaryUtil.getVarLong(buffer));
+    }
+
+    @Test
+    public void string() {
+        String s = "aé中😀";
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryUtil.stringSize(s));
+        BinaryUtil.putString(buffer, s);
+        assertEquals(0, buffer.remaining());
+        buffer.flip();
+        assertEquals(s, BinaryUtil.getString(buffer));
+    }
+
+    @Test
+    public void hash() {
+        String hex = "0123456789abcdef0123456789abcdef01234567";
+        assertEquals(21, BinaryUtil.hashSize(hex));
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryUtil.hashSize(hex) + BinaryUtil.hashSize("HEAD"));
+        BinaryUtil.putHash(buffer, hex);
+        BinaryUtil.putHash(buffer, "HEAD");
+        assertEquals(0, buffer.remaining());
+        buffer.flip();
+        assertEquals(hex, BinaryUtil.getHash(buffer));
+        assertEquals("HEAD", BinaryUtil.getHash(buffer));
+    }
+}
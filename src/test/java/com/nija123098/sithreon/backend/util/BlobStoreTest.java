@@ -0,0 +1,54 @@
+package com.nija123098.sithreon.backend.util;
+
+import com.nija123098.sithreon.backend.Config;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class BlobStoreTest {
+    private static final String HELLO_HASH = "ce013625030ba8dba906f756967f9e9ca394464a";// git hash-object of "hello\n"
+
+    @Test
+    public void hash() throws IOException {
+        Path file = Files.createTempFile("blob", null);
+        try {
+            Files.write(file, "hello\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals(HELLO_HASH, BlobStore.hash(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void commit() throws IOException {
+        String directory = Config.blobDirectory;
+        Path root = Files.createTempDirectory("blobs");
+        Config.blobDirectory = root.toString();
+        try {
+            assertFalse(BlobStore.contains(HELLO_HASH));
+            Files.write(BlobStore.getPartialPath(HELLO_HASH), "goodbye\n".getBytes(StandardCharsets.UTF_8));
+            assertFalse(BlobStore.commit(HELLO_HASH));
+            assertFalse(BlobStore.contains(HELLO_HASH));
+            Files.write(BlobStore.getPartialPath(HELLO_HASH), "hello\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(BlobStore.commit(HELLO_HASH));
+            assertTrue(BlobStore.contains(HELLO_HASH));
+            File copy = root.resolve("repo").resolve("hello.txt").toFile();
+            BlobStore.copyTo(HELLO_HASH, copy);
+            assertEquals("hello\n", new String(Files.readAllBytes(copy.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            Config.blobDirectory = directory;
+            FileUtil.deleteFiles(root);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsafeHash() {
+        BlobStore.getPath("../../etc/passwd");
+    }
+}
@@ -0,0 +1,83 @@
+package com.nija123098.sithreon.backend.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ByteQueueTest {
+
+    @Test
+    public void addTake() {
+        ByteQueue queue = new ByteQueue();
+        queue.add(new byte[]{10, 9, 8, 7, -6}, 1, 3);
+        assertEquals(3, queue.size());
+        byte[] bytes = new byte[3];
+        queue.take(bytes, 0, 3);
+        assertArrayEquals(new byte[]{9, 8, 7}, bytes);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void peekInt() {
+        ByteQueue queue = new ByteQueue();
+        queue.add(new byte[]{-1, -1, -1, -32, 5}, 0, 5);
+        assertEquals(-32, queue.peekInt());
+        queue.skip(Integer.BYTES);
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void slice() {
+        ByteQueue queue = new ByteQueue();
+        queue.add(new byte[]{1, 2, 3, 4}, 0, 4);
+        queue.skip(1);
+        ByteBuffer slice = queue.slice(2);
+        assertEquals(2, slice.remaining());
+        assertEquals(2, slice.get());
+        assertEquals(3, slice.get());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void grow() {
+        ByteQueue queue = new ByteQueue();
+        byte[] bytes = new byte[BufferPool.MINIMUM_SIZE * 3 + 7];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        for (int i = 0; i < bytes.length; i += 100) queue.add(bytes, i, Math.min(100, bytes.length - i));
+        assertEquals(bytes.length, queue.size());
+        byte[] read = new byte[bytes.length];
+        queue.take(read, 0, read.length);
+        assertArrayEquals(bytes, read);
+        queue.trim();
+        assertEquals(BufferPool.MINIMUM_SIZE, queue.getWritableLength());
+    }
+
+    @Test
+    public void compact() {
+        ByteQueue queue = new ByteQueue();
+        byte[] bytes = new byte[BufferPool.MINIMUM_SIZE - 1];
+        queue.add(bytes, 0, bytes.length);
+        queue.skip(bytes.length - 1);
+        queue.add(new byte[]{1, 2}, 0, 2);// must compact, not grow
+        assertEquals(3, queue.size());
+        assertEquals(BufferPool.MINIMUM_SIZE, queue.getArray().length);
+    }
+
+    @Test
+    public void writableBuffer() {
+        ByteQueue queue = new ByteQueue();
+        ByteBuffer buffer = queue.getWritableBuffer(8);
+        buffer.putInt(42);
+        queue.written(Integer.BYTES);
+        assertEquals(42, queue.peekInt());
+    }
+
+    @Test
+    public void pooledLength() {
+        assertEquals(BufferPool.MINIMUM_SIZE, BufferPool.getPooledLength(1));
+        assertEquals(BufferPool.MINIMUM_SIZE * 2, BufferPool.getPooledLength(BufferPool.MINIMUM_SIZE + 1));
+        assertEquals(BufferPool.MINIMUM_SIZE * 2, BufferPool.getPooledLength(BufferPool.MINIMUM_SIZE * 2));
+    }
+}
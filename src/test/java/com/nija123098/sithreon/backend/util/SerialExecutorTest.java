@@ -0,0 +1,38 @@
+package com.nija123098.sithreon.backend.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SerialExecutorTest {
+
+    @Test
+    public void order() throws InterruptedException {
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        SerialExecutor executor = new SerialExecutor(service);
+        List<Integer> ran = new ArrayList<>();
+        AtomicInteger concurrent = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            executor.execute(() -> {
+                assertEquals(1, concurrent.incrementAndGet());
+                ran.add(value);
+                concurrent.decrementAndGet();
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        service.shutdown();
+        for (int i = 0; i < 100; i++) assertEquals(Integer.valueOf(i), ran.get(i));
+    }
+}
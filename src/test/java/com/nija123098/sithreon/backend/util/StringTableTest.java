@@ -0,0 +1,74 @@
+package com.nija123098.sithreon.backend.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class StringTableTest {
+    private static final String REPO = "https://github.com/nija123098/SITHREON";
+
+    @Test
+    public void references() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        StringTable previous = StringTable.bind(new StringTable());
+        try {
+            int literalSize = StringTable.stringSize(REPO);
+            StringTable.putString(buffer, REPO);
+            assertEquals(literalSize, buffer.position());
+            assertEquals(1, StringTable.stringSize(REPO));
+            StringTable.putString(buffer, REPO);
+            StringTable.putString(buffer, "other");
+            StringTable.putString(buffer, REPO);
+            assertEquals(literalSize + 1 + 1 + BinaryUtil.stringSize("other") + 1, buffer.position());
+        } finally {
+            StringTable.bind(previous);
+        }
+        buffer.flip();
+        previous = StringTable.bind(new StringTable());
+        try {
+            assertEquals(REPO, StringTable.getString(buffer));
+            assertEquals(REPO, StringTable.getString(buffer));
+            assertEquals("other", StringTable.getString(buffer));
+            assertEquals(REPO, StringTable.getString(buffer));
+        } finally {
+            StringTable.bind(previous);
+        }
+    }
+
+    @Test
+    public void rollback() {
+        StringTable table = new StringTable();
+        StringTable previous = StringTable.bind(table);
+        try {
+            StringTable.putString(ByteBuffer.allocate(256), REPO);
+            int mark = table.mark();
+            StringTable.putString(ByteBuffer.allocate(256), "lost");
+            assertEquals(1, StringTable.stringSize("lost"));
+            table.rollback(mark);
+            assertEquals(1 + BinaryUtil.stringSize("lost"), StringTable.stringSize("lost"));// sent in full again
+            assertEquals(1, StringTable.stringSize(REPO));
+        } finally {
+            StringTable.bind(previous);
+        }
+    }
+
+    @Test
+    public void unbound() {
+        ByteBuffer buffer = ByteBuffer.allocate(StringTable.stringSize(REPO));
+        StringTable.putString(buffer, REPO);
+        buffer.flip();
+        assertEquals(REPO, StringTable.getString(buffer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownReference() {
+        StringTable previous = StringTable.bind(new StringTable());
+        try {
+            StringTable.getString(ByteBuffer.wrap(new byte[]{5}));
+        } finally {
+            StringTable.bind(previous);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.nija123098.sithreon.backend.util;
+
+import com.nija123098.sithreon.backend.Config;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ThreadMakerTest {
+
+    @Test
+    public void platformThreads() {
+        Thread thread = ThreadMaker.getThread(ThreadMaker.BACKEND, "Test Thread", true, () -> {
+        });
+        assertEquals("Test Thread", thread.getName());
+        assertEquals(ThreadMaker.BACKEND, thread.getThreadGroup());
+        assertTrue(thread.isDaemon());
+        assertFalse(ThreadMaker.getThread(ThreadMaker.BACKEND, "Test Thread", false, () -> {
+        }).isDaemon());
+    }
+
+    @Test
+    public void virtualThreads() throws InterruptedException {
+        Boolean virtualThreads = Config.virtualThreads;
+        Config.virtualThreads = true;
+        try {
+            CountDownLatch ran = new CountDownLatch(1);
+            Thread thread = ThreadMaker.getThread(ThreadMaker.NETWORK, "Test Virtual Thread", true, ran::countDown);
+            assertEquals("Test Virtual Thread", thread.getName());
+            assertTrue(thread.isDaemon());// virtual if supported, otherwise a platform daemon thread
+            thread.start();
+            assertTrue(ran.await(10, TimeUnit.SECONDS));
+            Thread platform = ThreadMaker.getThread(ThreadMaker.BACKEND, "Test Thread", false, () -> {
+            });
+            assertFalse(platform.isDaemon());
+            assertEquals(ThreadMaker.BACKEND, platform.getThreadGroup());
+        } finally {
+            Config.virtualThreads = virtualThreads;
+        }
+    }
+}